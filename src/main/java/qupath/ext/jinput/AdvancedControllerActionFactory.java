@@ -23,9 +23,22 @@
 
 package qupath.ext.jinput;
 
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,12 +46,14 @@ import org.slf4j.LoggerFactory;
 import javafx.animation.Timeline;
 import javafx.animation.Animation.Status;
 import javafx.animation.KeyFrame;
+import javafx.application.Platform;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableBooleanValue;
 import javafx.beans.value.ObservableValue;
 import javafx.util.Duration;
+import qupath.lib.common.ThreadTools;
 import qupath.lib.gui.QuPathGUI;
 import net.java.games.input.Controller;
 import net.java.games.input.ControllerEnvironment;
@@ -56,12 +71,27 @@ public class AdvancedControllerActionFactory {
 
 	final private static Logger logger = LoggerFactory.getLogger(AdvancedControllerActionFactory.class);
 	private static ControllerChangeListener controllerChangeListener = null;
+	private static final InputEventBus eventBus = new InputEventBus(256);
+	// Only accessed on the state server executor
+	private static ControllerStateServer stateServer = null;
+	private static InputEventListener stateServerListener = null;
+
+	/**
+	 * Time a new state socket path must stay unchanged before it is applied, in milliseconds.
+	 */
+	static final long STATE_SOCKET_DELAY_MILLIS = 1000;
+
+	// Starts and stops the state server, so that binding and closing never block the FX thread
+	private static final ScheduledExecutorService stateServerExecutor = Executors.newSingleThreadScheduledExecutor(ThreadTools.createThreadFactory("controller-state-socket-", true));
+	private static final Object stateSocketLock = new Object();
+	private static ScheduledFuture<?> pendingStateSocketPath = null;
 
 	/**
 	 * Attempt to turn on advanced controller, if any can be found.
 	 * 
 	 * Note: This only searches for controllers the first time it is run...
 	 * therefore any controller needs to be plugged in before this is called.
+	 * Controllers that were suspended by {@link #turnOffAdvancedController()} are resumed without searching again.
 	 * 
 	 * What's worse, if the controller is unplugged and then plugged in again it
 	 * won't be picked up.
@@ -70,18 +100,85 @@ public class AdvancedControllerActionFactory {
 	 * @return
 	 */
 	public static boolean tryToTurnOnAdvancedController(final QuPathGUI qupath) {
-		if (hasAdvancedControllers()) {
+		if (controllerChangeListener == null)
 			controllerChangeListener = new ControllerChangeListener(qupath);
-			controllerChangeListener.turnOnController();
-			return true;
-		}
-		return false;
+		return controllerChangeListener.turnOnController();
+	}
+
+	/**
+	 * Suspend any advanced controllers, so that they stop being polled.
+	 * The controllers are kept, so they can be resumed quickly by {@link #tryToTurnOnAdvancedController(QuPathGUI)}.
+	 */
+	public static void turnOffAdvancedController() {
+		if (controllerChangeListener != null)
+			controllerChangeListener.turnOffController();
 	}
 	
 	public static ControllerChangeListener getChangeListener() {
 		return controllerChangeListener;
 	}
 
+	/**
+	 * Get the bus to which the state of every controller is published after each poll.
+	 * Scripts and other extensions can add listeners or subscriptions here to follow controller input.
+	 * 
+	 * @return
+	 */
+	public static InputEventBus getEventBus() {
+		return eventBus;
+	}
+
+	/**
+	 * Request that controller and viewer state is published to a Unix domain socket.
+	 * The path is applied in the background once it has been unchanged for {@link #STATE_SOCKET_DELAY_MILLIS},
+	 * so that a path being typed into the preferences isn't bound one character at a time.
+	 * 
+	 * @param path the path of the socket file, or null or blank to stop publishing
+	 */
+	static void requestStateSocketPath(String path) {
+		synchronized (stateSocketLock) {
+			if (pendingStateSocketPath != null)
+				pendingStateSocketPath.cancel(false);
+			pendingStateSocketPath = stateServerExecutor.schedule(() -> setStateSocketPath(path), STATE_SOCKET_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Start publishing controller and viewer state to a Unix domain socket, stopping any previous server.
+	 * A socket left behind by a process that has exited is replaced, but no other file is overwritten.
+	 * This is only called on the state server executor, because it may block while the previous server stops.
+	 * 
+	 * @param path the path of the socket file, or null or blank to stop publishing
+	 */
+	private static void setStateSocketPath(String path) {
+		Path socketPath = null;
+		if (path != null && !path.isBlank()) {
+			try {
+				socketPath = Paths.get(path.strip());
+			} catch (InvalidPathException e) {
+				logger.warn("Invalid controller state socket path: {}", path);
+			}
+		}
+		if (stateServer != null) {
+			if (stateServer.getPath().equals(socketPath))
+				return;
+			eventBus.removeListener(stateServerListener);
+			stateServer.close();
+			stateServer = null;
+			stateServerListener = null;
+		}
+		if (socketPath == null)
+			return;
+		try {
+			var server = ControllerStateServer.start(socketPath);
+			stateServerListener = event -> server.publish(QuPathGUI.getInstance() == null ? null : QuPathGUI.getInstance().getViewer(), event);
+			eventBus.addListener(stateServerListener);
+			stateServer = server;
+		} catch (IOException | UnsupportedOperationException e) {
+			logger.warn("Unable to publish controller state to {}: {}", socketPath, e.getLocalizedMessage());
+		}
+	}
+
 	/**
 	 * Returns true if there are advanced controllers present, so it's worth adding a menu item.
 	 * 
@@ -101,17 +198,7 @@ public class AdvancedControllerActionFactory {
 		List<Controller> advancedControllers = new ArrayList<>();
 		logger.info("Looking for controllers, checking {}", controllers.length);
 		for (Controller controller : controllers) {
-			// For now, we only support 'Space Navigator' controllers... being more permissive can cause strange things to happen
-			// (in particular, things go very badly wrong with VirtualBox)
-//			if (controller.getType() == Type.STICK || !controller.getName().toLowerCase().contains("virtualbox")) {
-//			if (controller.getType() == Type.STICK && controller.getName().toLowerCase().equals("spacenavigator")) {
-			if (controller.getType() == Type.GAMEPAD) {
-				for (Component c : controller.getComponents()) {
-					logger.info("has: \"" + c.getName() + "\" is \"" + c.getIdentifier().toString() + "\"");
-				}
-				advancedControllers.add(controller);
-			}
-			if (controller.getType() == Type.STICK) {
+			if (isCompatible(controller)) {
 				logger.info("Registering controller: " + controller.getName() + ", " + controller.getType() ); 
 				for (Component c : controller.getComponents()) {
 					logger.info("has: \"" + c.getName() + "\" is \"" + c.getIdentifier().toString() + "\""); 
@@ -123,23 +210,82 @@ public class AdvancedControllerActionFactory {
 		return advancedControllers;
 	}
 
-	private static Controller[] getControllers() {
-		ControllerEnvironment controllerEnvironment = ControllerEnvironment.getDefaultEnvironment();
+	/**
+	 * Check whether a controller would be used to control the viewer.
+	 * 
+	 * @param controller
+	 * @return
+	 */
+	static boolean isCompatible(Controller controller) {
+		// For now, we only support sticks (e.g. 3D mice) and gamepads... being more permissive can cause strange things to happen
+		// (in particular, things go very badly wrong with VirtualBox)
+//		if (controller.getType() == Type.STICK || !controller.getName().toLowerCase().contains("virtualbox")) {
+//		if (controller.getType() == Type.STICK && controller.getName().toLowerCase().equals("spacenavigator")) {
+		return controller.getType() == Type.STICK || controller.getType() == Type.GAMEPAD;
+	}
+
+	/**
+	 * Get all controllers from the current backend, whether or not they are compatible.
+	 * 
+	 * @return
+	 */
+	static Controller[] getControllers() {
+		ControllerEnvironment controllerEnvironment = AdvancedControllerExtension.isEvdevBackendRequested() ?
+				EvdevControllerEnvironment.getInstance() : ControllerEnvironment.getDefaultEnvironment();
         return controllerEnvironment.getControllers();
 	}
 
+	/**
+	 * Lifecycle state of a registered controller.
+	 */
+	enum ControllerState {
+		/**
+		 * Found and wrapped, but not yet polled.
+		 */
+		CONNECTED,
+		/**
+		 * Polled, but there is no image in the current viewer to control.
+		 */
+		IDLE,
+		/**
+		 * Polled and controlling the current viewer.
+		 */
+		ACTIVE,
+		/**
+		 * Not polled, because controllers have been turned off. The device and its state are kept for when they
+		 * are turned on again.
+		 */
+		SUSPENDED
+	}
+
 	static class ControllerChangeListener implements ChangeListener<Boolean> {
 		
 		private final QuPathGUI qupath;
+		private final Supplier<List<Controller>> controllerSupplier;
 		private final int heartbeat = 20;
 		
 		private final List<QuPathAdvancedController> advancedControllers = new ArrayList<>();
+		private final Map<QuPathAdvancedController, ControllerState> states = new IdentityHashMap<>();
 		private Timeline timeline;
 		
+		// True while a tick requested by an evdev reader thread is waiting to run on the FX thread
+		private final AtomicBoolean wakeUpPending = new AtomicBoolean();
+		
 		private final BooleanProperty controllerOn = new SimpleBooleanProperty();
 		
 		ControllerChangeListener(final QuPathGUI qupath) {
+			this(qupath, AdvancedControllerActionFactory::getCompatibleControllers);
+		}
+
+		/**
+		 * Create a listener that takes its controllers from the supplier, rather than from JInput.
+		 * This makes it possible to drive the listener with synthetic controllers, without any device attached.
+		 * @param qupath the QuPath instance, or null to drive controllers without a viewer (e.g. in tests)
+		 * @param controllerSupplier
+		 */
+		ControllerChangeListener(final QuPathGUI qupath, final Supplier<List<Controller>> controllerSupplier) {
 			this.qupath = qupath;
+			this.controllerSupplier = controllerSupplier;
 		}
 
 		@Override
@@ -156,18 +302,7 @@ public class AdvancedControllerActionFactory {
 				timeline = new Timeline(
 						new KeyFrame(
 								Duration.ZERO,
-								actionEvent -> {
-									Iterator<QuPathAdvancedController> iter = advancedControllers.iterator();
-									while (iter.hasNext()) {
-										QuPathAdvancedController controller = iter.next();
-										if (!controller.updateViewer()) {
-											iter.remove();
-											logger.error("Controller {} has been unplugged!", controller.getControllerName());
-										}
-									}
-									if (advancedControllers.isEmpty())
-										turnOffController();
-								}
+								actionEvent -> tick()
 								),
 						new KeyFrame(
 								Duration.millis(heartbeat)
@@ -178,6 +313,69 @@ public class AdvancedControllerActionFactory {
 			return timeline;
 		}
 		
+		/**
+		 * Poll every registered controller once and apply the result to the viewer.
+		 * This is called by the timeline on every heartbeat, but may also be called directly (on the FX thread).
+		 */
+		void tick() {
+			var viewer = qupath == null ? null : qupath.getViewer();
+			var state = viewer == null || viewer.getServer() == null ? ControllerState.IDLE : ControllerState.ACTIVE;
+			Iterator<QuPathAdvancedController> iter = advancedControllers.iterator();
+			while (iter.hasNext()) {
+				QuPathAdvancedController controller = iter.next();
+				if (controller.updateViewer()) {
+					setState(controller, state);
+					eventBus.publish(controller.getController());
+				} else {
+					iter.remove();
+					states.remove(controller);
+					logger.error("Controller {} has been unplugged!", controller.getControllerName());
+				}
+			}
+			if (advancedControllers.isEmpty()) {
+				// Nothing left to resume, so the next call to turnOnController() will search again
+				if (timeline != null)
+					timeline.stop();
+				controllerOn.set(false);
+			}
+		}
+
+		private void setState(QuPathAdvancedController controller, ControllerState state) {
+			var previous = states.put(controller, state);
+			if (previous != state)
+				logger.debug("Controller {}: {} -> {}", controller.getControllerName(), previous, state);
+		}
+
+		/**
+		 * Get the lifecycle state of a registered controller.
+		 * @param controller
+		 * @return the state, or null if the controller isn't registered (e.g. because it has been unplugged)
+		 */
+		ControllerState getState(QuPathAdvancedController controller) {
+			return states.get(controller);
+		}
+
+		/**
+		 * Get the controllers that are currently registered, whether or not they are suspended.
+		 * @return
+		 */
+		List<QuPathAdvancedController> getControllers() {
+			return Collections.unmodifiableList(advancedControllers);
+		}
+
+		/**
+		 * Wrap a JInput controller in a QuPath controller, using the profile that matches it.
+		 * @param controller
+		 * @return
+		 */
+		QuPathAdvancedController createAdvancedController(Controller controller) {
+			return new ProfiledController(controller, qupath, heartbeat);
+		}
+
+		int getHeartbeat() {
+			return heartbeat;
+		}
+
 		private boolean isControllerOn() {
 			return timeline != null && timeline.getStatus() == Status.RUNNING;
 		}
@@ -186,27 +384,65 @@ public class AdvancedControllerActionFactory {
 			return controllerOn;
 		}
 
+		/**
+		 * Stop polling, but keep the registered controllers so that they can be resumed without searching again.
+		 */
 		void turnOffController() {
-			if (timeline != null) {
+			if (timeline != null)
 				timeline.stop();
-				advancedControllers.clear();
-				controllerOn.set(true);
+			for (var controller : advancedControllers)
+				setState(controller, ControllerState.SUSPENDED);
+			controllerOn.set(false);
+		}
+
+		/**
+		 * Pause polling temporarily (e.g. while controllers are benchmarked), without turning controllers off.
+		 * This must be called on the FX thread.
+		 * @return true if polling was paused, and so should be resumed with {@link #resumePolling()}
+		 */
+		boolean pausePolling() {
+			if (!isControllerOn())
+				return false;
+			timeline.pause();
+			return true;
+		}
+
+		/**
+		 * Resume polling after {@link #pausePolling()}, unless controllers have been turned off (or unplugged)
+		 * in the meantime. This must be called on the FX thread.
+		 */
+		void resumePolling() {
+			if (controllerOn.get() && timeline != null && timeline.getStatus() == Status.PAUSED)
+				timeline.play();
+		}
+
+		/**
+		 * Replace any registered controllers with those from the supplier, without starting the timeline.
+		 * @return true if at least one controller was registered
+		 */
+		boolean registerControllers() {
+			advancedControllers.clear(); // Just to be sure...
+			states.clear();
+			for (Controller controller : controllerSupplier.get()) {
+				if (controller instanceof EvdevController evdev)
+					evdev.setListener(new WakeUp());
+				var advancedController = createAdvancedController(controller);
+				advancedControllers.add(advancedController);
+				setState(advancedController, ControllerState.CONNECTED);
 			}
+			return !advancedControllers.isEmpty();
 		}
 
+		/**
+		 * Start polling controllers. Suspended controllers are resumed; controllers are only searched for if none
+		 * are registered.
+		 * @return true if at least one controller is being polled
+		 */
 		boolean turnOnController() {
 			if (isControllerOn())
 				return true;
 			
-			advancedControllers.clear(); // Just to be sure...
-			for (Controller controller : getCompatibleControllers()) {
-				if (controller.getType() == Type.GAMEPAD) {
-					advancedControllers.add(new QuPathAdvancedGamepadController(controller, qupath, heartbeat));
-				} else {
-					advancedControllers.add(new QuPathAdvancedStickController(controller, qupath, heartbeat));
-				}
-			}
-			if (advancedControllers.isEmpty()) {
+			if (advancedControllers.isEmpty() && !registerControllers()) {
 				logger.error("No advanced controller found!");
 				return false;
 			}
@@ -219,6 +455,36 @@ public class AdvancedControllerActionFactory {
 			return true;
 		}
 		
+		/**
+		 * Tick immediately, rather than waiting for the next heartbeat, if controllers are on.
+		 * This must be called on the FX thread.
+		 */
+		void wakeUp() {
+			wakeUpPending.set(false);
+			if (isControllerOn())
+				tick();
+		}
+		
+		/**
+		 * Requests an immediate tick when an evdev controller starts to move after being at rest for longer than
+		 * the heartbeat, so that the first movement isn't delayed by up to a whole heartbeat.
+		 * Events arriving during continuous movement are left to the timeline.
+		 */
+		private class WakeUp implements EvdevController.EvdevListener {
+			
+			// Only accessed on the controller's reader thread
+			private long lastMicros = Long.MIN_VALUE / 2;
+			
+			@Override
+			public void componentChanged(Component component, float value, long timestampMicros) {
+				long gap = timestampMicros - lastMicros;
+				lastMicros = timestampMicros;
+				if (gap > heartbeat * 1000L && wakeUpPending.compareAndSet(false, true))
+					Platform.runLater(ControllerChangeListener.this::wakeUp);
+			}
+			
+		}
+		
 		public QuPathAdvancedController getController() {
 			if (advancedControllers.size() > 1) {
 				logger.warn("More than one controller (" + advancedControllers.size() + "), returning the first...");
@@ -35,22 +35,32 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.BiPredicate;
 
+import javafx.animation.KeyFrame;
+import javafx.application.Platform;
+import javafx.animation.Timeline;
 import javafx.scene.Scene;
+import javafx.scene.control.CheckMenuItem;
 import javafx.scene.control.MenuItem;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.FlowPane;
 import javafx.scene.layout.GridPane;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.StringProperty;
 import qupath.fx.prefs.controlsfx.PropertyItemBuilder;
 import qupath.lib.common.GeneralTools;
 import qupath.lib.gui.QuPathGUI;
 import qupath.fx.dialogs.Dialogs;
+import qupath.fx.dialogs.FileChoosers;
 import qupath.lib.gui.extensions.GitHubProject;
 import qupath.lib.gui.extensions.QuPathExtension;
 
@@ -77,6 +87,14 @@ public class AdvancedControllerExtension implements QuPathExtension, GitHubProje
 	// (And adds ~0.7s to startup time on test Mac Pro)
 	private static final BooleanProperty requestAdvancedControllers = PathPrefs.createPersistentPreference("requestAdvancedControllers", true);
 	private static final BooleanProperty invertControllerScrolling = PathPrefs.createPersistentPreference("invertControllerScrolling", false);
+	// Read Linux input devices directly, rather than through JInput (needs a restart to take effect)
+	private static final BooleanProperty useEvdevControllers = PathPrefs.createPersistentPreference("useEvdevControllers", false);
+	// Path of a Unix domain socket used to publish controller & viewer state to other local tools (blank to disable)
+	private static final StringProperty controllerStateSocket = PathPrefs.createPersistentPreference("controllerStateSocket", "");
+	// Angle in degrees to which controller rotation snaps (0 for continuous rotation)
+	private static final DoubleProperty controllerRotationSnap = PathPrefs.createPersistentPreference("controllerRotationSnap", 0.0);
+	// Memory in MB for tiles retained around the recent controller path (0 to disable, the default)
+	private static final IntegerProperty controllerTileRetention = PathPrefs.createPersistentPreference("controllerTileRetention", 0);
 	private final static String EXTENSION_NAME = resources.getString("extension.title");
 	private final static String EXTENSION_DESCRIPTION = resources.getString("extension.description");
 	private final static String EXTENSION_QUPATH_VERSION = resources.getString("extension.qupath.version");
@@ -105,17 +123,45 @@ public class AdvancedControllerExtension implements QuPathExtension, GitHubProje
 		invertControllerScrolling.set(request);
 	}
 	
+	public static BooleanProperty useEvdevControllersProperty() {
+		return useEvdevControllers;
+	}
+
+	/**
+	 * Query whether controllers should be read using the Linux evdev backend, rather than JInput's native library.
+	 * @return true if running on Linux and the preference is set
+	 */
+	static boolean isEvdevBackendRequested() {
+		return GeneralTools.isLinux() && useEvdevControllers.get();
+	}
+
+	public static StringProperty controllerStateSocketProperty() {
+		return controllerStateSocket;
+	}
+
+	public static DoubleProperty controllerRotationSnapProperty() {
+		return controllerRotationSnap;
+	}
+
+	public static IntegerProperty controllerTileRetentionProperty() {
+		return controllerTileRetention;
+	}
+
 	private static boolean alreadyInstalled = false;
 
 	private static boolean nativeLibraryLoaded = false;
 
 	static {
 		try {
-			nativeLibraryLoaded = loadNativeLibrary();
-			if (nativeLibraryLoaded)
-				logger.debug("Native library loaded");
-			else
-				logger.debug("Unable to preload JInput native library (I couldn't find it)");
+			if (isEvdevBackendRequested())
+				logger.debug("Using evdev backend, JInput native library not required");
+			else {
+				nativeLibraryLoaded = loadNativeLibrary();
+				if (nativeLibraryLoaded)
+					logger.debug("Native library loaded");
+				else
+					logger.debug("Unable to preload JInput native library (I couldn't find it)");
+			}
 		} catch (Throwable t) {
 			logger.warn("Unable to preload JInput native library: " + t.getLocalizedMessage(), t);
 		}
@@ -133,7 +179,8 @@ public class AdvancedControllerExtension implements QuPathExtension, GitHubProje
 			return;
 		}
 		try {
-			loadNativeLibrary();
+			if (!isEvdevBackendRequested())
+				loadNativeLibrary();
 		} catch (Throwable t) {
 			logger.warn("Unable to preload JInput native library: " + t.getLocalizedMessage(), t);
 			return;
@@ -184,6 +231,7 @@ public class AdvancedControllerExtension implements QuPathExtension, GitHubProje
 							resources.getString("notif.noControllers"));
 				}
 			} else {
+				AdvancedControllerActionFactory.turnOffAdvancedController();
 				Dialogs.showInfoNotification(
 						resources.getString("extension.title"),
 						resources.getString("notif.extensionOff")
@@ -232,6 +280,49 @@ public class AdvancedControllerExtension implements QuPathExtension, GitHubProje
             //invertControllerScrolling.set(n);
             setInvertControllerScrolling(n);
 		});
+
+		if (GeneralTools.isLinux()) {
+			panel.getPropertySheet().getItems().add(
+					new PropertyItemBuilder<>(
+							useEvdevControllersProperty(),
+							Boolean.class)
+							.bundle("qupath.ext.jinput.strings")
+							.key("evdev")
+							.category(resources.getString("extension.title"))
+							.build()
+			);
+		}
+
+		panel.getPropertySheet().getItems().add(
+				new PropertyItemBuilder<>(
+						controllerStateSocketProperty(),
+						String.class)
+						.bundle("qupath.ext.jinput.strings")
+						.key("socket")
+						.category(resources.getString("extension.title"))
+						.build()
+		);
+		panel.getPropertySheet().getItems().add(
+				new PropertyItemBuilder<>(
+						controllerRotationSnapProperty(),
+						Double.class)
+						.bundle("qupath.ext.jinput.strings")
+						.key("rotationSnap")
+						.category(resources.getString("extension.title"))
+						.build()
+		);
+		panel.getPropertySheet().getItems().add(
+				new PropertyItemBuilder<>(
+						controllerTileRetentionProperty(),
+						Integer.class)
+						.bundle("qupath.ext.jinput.strings")
+						.key("tileRetention")
+						.category(resources.getString("extension.title"))
+						.build()
+		);
+
+		AdvancedControllerActionFactory.requestStateSocketPath(controllerStateSocket.get());
+		controllerStateSocketProperty().addListener((v, o, n) -> AdvancedControllerActionFactory.requestStateSocketPath(n));
 	}
 
 	private void addMenuItem(QuPathGUI qupath) {
@@ -251,12 +342,104 @@ public class AdvancedControllerExtension implements QuPathExtension, GitHubProje
 
 			var controller = AdvancedControllerActionFactory.getChangeListener().getController().getController();
 			var components = controller.getComponents();
-			for (var component: components) {
-				flowPane.getChildren().add(new ComponentVisualisation(component));
+			var visualisations = new ComponentVisualisation[components.length];
+			for (int i = 0; i < components.length; i++) {
+				visualisations[i] = new ComponentVisualisation(components[i]);
+				flowPane.getChildren().add(visualisations[i]);
 			}
+
+			// Read the latest state from the event bus at display rate, rather than polling the components
+			var subscription = AdvancedControllerActionFactory.getEventBus().subscribe();
+			InputEventListener handler = event -> {
+				if (event.getController() != controller)
+					return;
+				int n = Math.min(event.getComponentCount(), visualisations.length);
+				for (int i = 0; i < n; i++)
+					visualisations[i].setValue(event.getValue(i));
+			};
+			Timeline timeline = new Timeline(
+					new KeyFrame(Duration.ZERO, actionEvent -> subscription.poll(handler)),
+					new KeyFrame(Duration.millis(40))
+			);
+			timeline.setCycleCount(Timeline.INDEFINITE);
+			stage.setOnHidden(event -> timeline.stop());
+			timeline.play();
 			stage.show();
 		});
 		menu.getItems().add(menuItem);
+
+		var regionStatistics = new ViewerOverlayToggle(qupath,
+				viewer -> new RegionStatisticsOverlay(viewer, viewer.getOverlayOptions()));
+		CheckMenuItem regionStatisticsItem = new CheckMenuItem(resources.getString("menu.regionStatistics"));
+		regionStatisticsItem.selectedProperty().bindBidirectional(regionStatistics.showOverlayProperty());
+		menu.getItems().add(regionStatisticsItem);
+
+		var minimap = new ViewerOverlayToggle(qupath,
+				viewer -> new MinimapOverlay(viewer, viewer.getOverlayOptions()));
+		CheckMenuItem minimapItem = new CheckMenuItem(resources.getString("menu.minimap"));
+		minimapItem.selectedProperty().bindBidirectional(minimap.showOverlayProperty());
+		menu.getItems().add(minimapItem);
+
+		CheckMenuItem brushItem = new CheckMenuItem(resources.getString("menu.brush"));
+		brushItem.selectedProperty().bindBidirectional(BrushTool.getInstance().activeProperty());
+		menu.getItems().add(brushItem);
+
+		MenuItem exportItem = new MenuItem(resources.getString("menu.exportBookmarks"));
+		exportItem.setOnAction(e -> {
+			if (qupath.getViewer() == null || !qupath.getViewer().hasServer())
+				return;
+			var dir = FileChoosers.promptForDirectory(resources.getString("menu.exportBookmarks"), null);
+			if (dir == null)
+				return;
+			CompletableFuture.runAsync(() -> {
+				try {
+					int n = BookmarkExporter.exportBookmarks(qupath, dir.getAbsolutePath());
+					Platform.runLater(() -> Dialogs.showInfoNotification(resources.getString("extension.title"),
+							String.format(resources.getString("notif.bookmarksExported"), n, dir.getAbsolutePath())));
+				} catch (Exception ex) {
+					logger.error("Unable to export bookmarks: " + ex.getLocalizedMessage(), ex);
+					Platform.runLater(() -> Dialogs.showErrorNotification(resources.getString("extension.title"), ex));
+				}
+			});
+		});
+		menu.getItems().add(exportItem);
+
+		MenuItem diagnosticsItem = new MenuItem(resources.getString("menu.diagnostics"));
+		diagnosticsItem.setOnAction(e -> {
+			var path = ControllerDiagnostics.getDefaultReportPath();
+			Dialogs.showInfoNotification(resources.getString("extension.title"), resources.getString("notif.diagnosticsRunning"));
+			CompletableFuture.runAsync(() -> {
+				try {
+					ControllerDiagnostics.run(2.0, path.toString());
+					Platform.runLater(() -> Dialogs.showInfoNotification(resources.getString("extension.title"),
+							String.format(resources.getString("notif.diagnosticsWritten"), path)));
+				} catch (Exception ex) {
+					logger.error("Unable to run controller diagnostics: " + ex.getLocalizedMessage(), ex);
+					Platform.runLater(() -> Dialogs.showErrorNotification(resources.getString("extension.title"), ex));
+				}
+			});
+		});
+		menu.getItems().add(diagnosticsItem);
+
+		CheckMenuItem traceItem = new CheckMenuItem(resources.getString("menu.trace"));
+		traceItem.selectedProperty().bindBidirectional(InputTrace.enabledProperty());
+		menu.getItems().add(traceItem);
+
+		MenuItem saveTraceItem = new MenuItem(resources.getString("menu.saveTrace"));
+		saveTraceItem.setOnAction(e -> {
+			var path = InputTrace.getDefaultPath();
+			CompletableFuture.runAsync(() -> {
+				try {
+					int n = InputTrace.write(path.toString());
+					Platform.runLater(() -> Dialogs.showInfoNotification(resources.getString("extension.title"),
+							String.format(resources.getString("notif.traceWritten"), n, path)));
+				} catch (Exception ex) {
+					logger.error("Unable to write controller trace: " + ex.getLocalizedMessage(), ex);
+					Platform.runLater(() -> Dialogs.showErrorNotification(resources.getString("extension.title"), ex));
+				}
+			});
+		});
+		menu.getItems().add(saveTraceItem);
 	}
 
 	/**
@@ -0,0 +1,125 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.common.GeneralTools;
+import qupath.lib.common.ThreadTools;
+import qupath.lib.gui.QuPathGUI;
+import qupath.lib.images.servers.ImageServer;
+import qupath.lib.images.servers.ServerTools;
+import qupath.lib.images.writers.ImageWriterTools;
+
+/**
+ * Export the regions bookmarked with a controller as image files.
+ * <p>
+ * Regions are read and written in parallel, one per thread, so that only as many regions as there are threads are
+ * held in memory at any time.
+ * Regions are read through the image server, and so use any tiles already cached for display.
+ * <p>
+ * This can be called from a script, for example:
+ * <pre>
+ * qupath.ext.jinput.BookmarkExporter.exportBookmarks(getQuPath(), "/path/to/directory")
+ * </pre>
+ */
+public class BookmarkExporter {
+
+	private static final Logger logger = LoggerFactory.getLogger(BookmarkExporter.class);
+
+	private BookmarkExporter() {}
+
+	/**
+	 * Export all bookmarked regions for the image in the current viewer. This blocks until all regions are written.
+	 * Bookmarks are exported at the downsample they were made at; rotated views are exported as their bounding box.
+	 * @param qupath
+	 * @param directory output directory; it will be created if necessary
+	 * @return the number of regions written
+	 * @throws IOException if the output directory can't be created
+	 * @throws InterruptedException
+	 */
+	public static int exportBookmarks(QuPathGUI qupath, String directory) throws IOException, InterruptedException {
+		var viewer = qupath.getViewer();
+		var server = viewer == null ? null : viewer.getServer();
+		if (server == null)
+			throw new IllegalStateException("No image is open");
+		var bookmarks = ViewBookmarks.getInstance().getBookmarks(qupath, viewer);
+		return export(server, bookmarks, new File(directory));
+	}
+
+	static int export(ImageServer<BufferedImage> server, List<ViewBookmarks.Bookmark> bookmarks, File directory) throws IOException, InterruptedException {
+		if (bookmarks.isEmpty())
+			return 0;
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Unable to create directory " + directory);
+
+		String name = GeneralTools.stripInvalidFilenameChars(GeneralTools.stripExtension(ServerTools.getDisplayableImageName(server)));
+		String ext = server.isRGB() ? ".png" : ".ome.tif";
+		List<Callable<Boolean>> tasks = new ArrayList<>();
+		for (int i = 0; i < bookmarks.size(); i++) {
+			var request = bookmarks.get(i).toRegionRequest(server.getPath(), server.getWidth(), server.getHeight());
+			if (request == null)
+				continue;
+			var file = new File(directory, String.format("%s-bookmark-%03d%s", name, i + 1, ext));
+			tasks.add(() -> {
+				try {
+					ImageWriterTools.writeImageRegion(server, request, file.getAbsolutePath());
+					return true;
+				} catch (IOException e) {
+					logger.error("Unable to write " + file + ": " + e.getLocalizedMessage(), e);
+					return false;
+				}
+			});
+		}
+
+		int nThreads = Math.max(1, Math.min(tasks.size(), Runtime.getRuntime().availableProcessors()));
+		var pool = Executors.newFixedThreadPool(nThreads, ThreadTools.createThreadFactory("controller-bookmark-export-", true));
+		int count = 0;
+		try {
+			long startTime = System.currentTimeMillis();
+			for (var future : pool.invokeAll(tasks)) {
+				try {
+					if (future.get())
+						count++;
+				} catch (ExecutionException e) {
+					logger.error("Bookmark export failed: " + e.getCause().getLocalizedMessage(), e.getCause());
+				}
+			}
+			logger.info("Exported {}/{} bookmarked regions to {} in {} ms using {} threads",
+					count, tasks.size(), directory, System.currentTimeMillis() - startTime, nThreads);
+		} finally {
+			pool.shutdownNow();
+		}
+		return count;
+	}
+
+}
@@ -0,0 +1,368 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.locationtech.jts.algorithm.Distance;
+import org.locationtech.jts.awt.ShapeWriter;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.operation.union.UnaryUnionOp;
+import org.locationtech.jts.simplify.TopologyPreservingSimplifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import qupath.lib.gui.viewer.QuPathViewer;
+import qupath.lib.gui.viewer.overlays.AbstractOverlay;
+import qupath.lib.images.ImageData;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.regions.ImageRegion;
+import qupath.lib.roi.GeometryTools;
+
+/**
+ * Brush for painting annotations with a controller: the analog axes move a virtual cursor, and holding the paint
+ * button adds to the stroke.
+ * <p>
+ * Sampling the cursor on every heartbeat would produce very dense polygons, so the stroke is decimated as it is drawn:
+ * points are dropped as long as every sample since the last kept point stays within {@link #TOLERANCE_PIXELS}
+ * screen pixels of the simplified path.
+ * The remaining points are buffered into chunks. Each chunk is converted to a shape once for display, and the
+ * chunks are only unioned (in a single cascaded union) when the stroke is finished.
+ * <p>
+ * The brush is shared by all controllers, but only one drives it at a time: the controller that last moved the
+ * cursor or painted keeps the brush until it is idle for a heartbeat, and idle controllers don't affect it at all.
+ */
+class BrushTool {
+
+	private static final Logger logger = LoggerFactory.getLogger(BrushTool.class);
+
+	/**
+	 * Cursor movement per heartbeat at full deflection, in screen pixels.
+	 */
+	static final double CURSOR_SPEED_PIXELS = 8;
+
+	/**
+	 * Brush radius, in screen pixels.
+	 */
+	static final double BRUSH_RADIUS_PIXELS = 10;
+
+	/**
+	 * Maximum deviation from the sampled path allowed by decimation and simplification, in screen pixels.
+	 */
+	static final double TOLERANCE_PIXELS = 1.0;
+
+	/**
+	 * Number of decimated points collected before they are merged into the stroke geometry.
+	 */
+	static final int CHUNK_POINTS = 32;
+
+	/**
+	 * Maximum number of dropped samples checked against each new segment; once reached, the next point is kept.
+	 */
+	static final int MAX_DROPPED = 64;
+
+	static final double AXIS_THRESHOLD = 0.1;
+
+	private static BrushTool instance;
+
+	private final BooleanProperty active = new SimpleBooleanProperty(false);
+
+	private final BrushOverlay overlay;
+	private QuPathViewer viewer;
+
+	// Controller currently driving the brush, and whether it was idle on its last update
+	private Object owner;
+	private boolean ownerIdle = true;
+
+	private double cursorX = Double.NaN, cursorY = Double.NaN;
+
+	// Current stroke, fixed in image pixels when the stroke starts
+	private boolean painting = false;
+	private double radius, tolerance;
+	private ImagePlane plane;
+	private final List<Coordinate> pending = new ArrayList<>();
+	// Samples dropped since the second-last pending point, which must stay within tolerance of the path
+	private final List<Coordinate> dropped = new ArrayList<>();
+	private final List<Geometry> chunks = new ArrayList<>();
+	// Outlines of all chunks, filled with the non-zero winding rule so that overlaps are painted once
+	private final Path2D strokePath = new Path2D.Double(Path2D.WIND_NON_ZERO);
+	private final ShapeWriter shapeWriter = new ShapeWriter();
+
+	private BrushTool() {
+		overlay = new BrushOverlay();
+		active.addListener((v, o, n) -> {
+			if (!n) {
+				finishStroke();
+				detach();
+				owner = null;
+				ownerIdle = true;
+			}
+		});
+	}
+
+	/**
+	 * Get the brush shared by all controllers.
+	 * @return
+	 */
+	static synchronized BrushTool getInstance() {
+		if (instance == null)
+			instance = new BrushTool();
+		return instance;
+	}
+
+	BooleanProperty activeProperty() {
+		return active;
+	}
+
+	boolean isActive() {
+		return active.get();
+	}
+
+	/**
+	 * Update the cursor and stroke from one controller.
+	 * This is ignored if the controller is idle, or if another controller is still using the brush.
+	 * @param controller the controller providing the input
+	 * @param viewer
+	 * @param dx horizontal axis value (-1 to 1)
+	 * @param dy vertical axis value (-1 to 1)
+	 * @param paint true if the paint button is held down
+	 */
+	void update(Object controller, QuPathViewer viewer, double dx, double dy, boolean paint) {
+		boolean moved = Math.abs(dx) >= AXIS_THRESHOLD || Math.abs(dy) >= AXIS_THRESHOLD;
+		boolean idle = !moved && !paint;
+		if (controller != owner) {
+			// The first controller to update takes the brush, so that the cursor is shown straight away
+			if (owner != null && (idle || !ownerIdle))
+				return;
+			owner = controller;
+		}
+		ownerIdle = idle;
+
+		if (viewer != this.viewer) {
+			finishStroke();
+			detach();
+			attach(viewer);
+		}
+		if (Double.isNaN(cursorX)) {
+			cursorX = viewer.getCenterPixelX();
+			cursorY = viewer.getCenterPixelY();
+		}
+
+		if (moved) {
+			// Move in screen directions, allowing for rotation
+			double scale = CURSOR_SPEED_PIXELS * viewer.getDownsampleFactor();
+			double sin = Math.sin(-viewer.getRotation());
+			double cos = Math.cos(-viewer.getRotation());
+			cursorX += (cos * dx - sin * dy) * scale;
+			cursorY += (sin * dx + cos * dy) * scale;
+			var server = viewer.getServer();
+			cursorX = Math.max(0, Math.min(server.getWidth(), cursorX));
+			cursorY = Math.max(0, Math.min(server.getHeight(), cursorY));
+			// Keep the cursor in view
+			if (!viewer.getDisplayedRegionShape().contains(cursorX, cursorY))
+				viewer.setCenterPixelLocation(cursorX, cursorY);
+		}
+
+		if (paint && !painting)
+			startStroke(viewer);
+		if (painting) {
+			if (paint)
+				addPoint(cursorX, cursorY);
+			else
+				finishStroke();
+		}
+		if (moved || painting)
+			viewer.repaint();
+	}
+
+	private void attach(QuPathViewer viewer) {
+		this.viewer = viewer;
+		cursorX = Double.NaN;
+		cursorY = Double.NaN;
+		viewer.getCustomOverlayLayers().add(overlay);
+	}
+
+	private void detach() {
+		if (viewer != null) {
+			viewer.getCustomOverlayLayers().remove(overlay);
+			viewer.repaint();
+		}
+		viewer = null;
+		cursorX = Double.NaN;
+		cursorY = Double.NaN;
+	}
+
+	private void startStroke(QuPathViewer viewer) {
+		double downsample = viewer.getDownsampleFactor();
+		radius = BRUSH_RADIUS_PIXELS * downsample;
+		tolerance = TOLERANCE_PIXELS * downsample;
+		plane = viewer.getImagePlane();
+		clearStroke();
+		painting = true;
+	}
+
+	private void clearStroke() {
+		pending.clear();
+		dropped.clear();
+		chunks.clear();
+		strokePath.reset();
+	}
+
+	/**
+	 * Streaming decimation: skip points that are within tolerance of the last point, and replace the last point if
+	 * it and every sample dropped since the point before it lie within tolerance of the segment to the new point.
+	 * Checking all the dropped samples (rather than only the last point) stops the error growing along gentle curves.
+	 */
+	private void addPoint(double x, double y) {
+		var p = new Coordinate(x, y);
+		int n = pending.size();
+		// The cursor hasn't moved
+		if (n > 0 && pending.get(n - 1).equals2D(p))
+			return;
+		if (n > 0 && dropped.size() < MAX_DROPPED) {
+			var last = pending.get(n - 1);
+			if (last.distance(p) < tolerance) {
+				dropped.add(p);
+				return;
+			}
+			if (n > 1 && isWithinTolerance(pending.get(n - 2), p, last)) {
+				dropped.add(new Coordinate(last));
+				last.setCoordinate(p);
+				return;
+			}
+		}
+		pending.add(p);
+		dropped.clear();
+		if (pending.size() >= CHUNK_POINTS)
+			flushChunk(false);
+	}
+
+	/**
+	 * Check whether a point and all the dropped samples lie within tolerance of the segment from a to b.
+	 */
+	private boolean isWithinTolerance(Coordinate a, Coordinate b, Coordinate point) {
+		if (Distance.pointToSegment(point, a, b) >= tolerance)
+			return false;
+		for (var c : dropped) {
+			if (Distance.pointToSegment(c, a, b) >= tolerance)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Buffer the pending points into a chunk of the stroke, and add its outline to the displayed shape.
+	 * This happens at most once per heartbeat, and only converts the new chunk.
+	 * @param last if false, the final point is kept so the next chunk joins up with this one
+	 */
+	private void flushChunk(boolean last) {
+		if (pending.isEmpty())
+			return;
+		var factory = GeometryTools.getDefaultFactory();
+		Geometry chunk;
+		if (pending.size() == 1)
+			chunk = factory.createPoint(pending.get(0)).buffer(radius);
+		else
+			chunk = factory.createLineString(pending.toArray(Coordinate[]::new)).buffer(radius);
+		chunk = TopologyPreservingSimplifier.simplify(chunk, tolerance);
+		// Normalizing gives every shell the same orientation (and holes the opposite), as the winding rule needs
+		chunk.normalize();
+		chunks.add(chunk);
+		strokePath.append(shapeWriter.toShape(chunk), false);
+
+		var end = pending.get(pending.size() - 1);
+		pending.clear();
+		dropped.clear();
+		if (!last)
+			pending.add(new Coordinate(end));
+	}
+
+	private void finishStroke() {
+		if (!painting)
+			return;
+		painting = false;
+		flushChunk(true);
+		if (chunks.isEmpty() || viewer == null) {
+			clearStroke();
+			return;
+		}
+		var hierarchy = viewer.getHierarchy();
+		if (hierarchy != null) {
+			var geometry = TopologyPreservingSimplifier.simplify(UnaryUnionOp.union(chunks), tolerance);
+			var annotation = PathObjects.createAnnotationObject(GeometryTools.geometryToROI(geometry, plane));
+			hierarchy.addObject(annotation);
+			logger.debug("Added brush annotation with {} vertices from {} chunks", geometry.getNumPoints(), chunks.size());
+		}
+		clearStroke();
+	}
+
+
+	/**
+	 * Draws the cursor, the committed stroke and the pending points (all in image coordinates).
+	 */
+	private class BrushOverlay extends AbstractOverlay {
+
+		private final Path2D pendingPath = new Path2D.Double();
+		private final Ellipse2D cursor = new Ellipse2D.Double();
+
+		private BrushOverlay() {
+			super(null);
+		}
+
+		@Override
+		public void paintOverlay(Graphics2D g2d, ImageRegion imageRegion, double downsampleFactor, ImageData<BufferedImage> imageData, boolean paintCompletely) {
+			if (Double.isNaN(cursorX))
+				return;
+			g2d.setStroke(new BasicStroke((float)(2 * downsampleFactor)));
+			g2d.setColor(new Color(255, 255, 0, 160));
+			if (!chunks.isEmpty())
+				g2d.fill(strokePath);
+			if (pending.size() > 1) {
+				pendingPath.reset();
+				pendingPath.moveTo(pending.get(0).x, pending.get(0).y);
+				for (int i = 1; i < pending.size(); i++)
+					pendingPath.lineTo(pending.get(i).x, pending.get(i).y);
+				g2d.setStroke(new BasicStroke((float)(2 * (painting ? radius : BRUSH_RADIUS_PIXELS * downsampleFactor)),
+						BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+				g2d.draw(pendingPath);
+			}
+			double r = painting ? radius : BRUSH_RADIUS_PIXELS * downsampleFactor;
+			cursor.setFrame(cursorX - r, cursorY - r, r * 2, r * 2);
+			g2d.setStroke(new BasicStroke((float)(2 * downsampleFactor)));
+			g2d.setColor(Color.YELLOW);
+			g2d.draw(cursor);
+		}
+
+	}
+
+}
@@ -1,13 +1,9 @@
 package qupath.ext.jinput;
 
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
-import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.TextField;
 import javafx.scene.layout.HBox;
-import javafx.util.Duration;
 import net.java.games.input.Component;
 import javafx.scene.control.Label;
 import org.slf4j.Logger;
@@ -15,11 +11,15 @@ import org.slf4j.LoggerFactory;
 
 
 
+/**
+ * Displays the value of a single controller component.
+ * Values are pushed in from the {@link InputEventBus}, rather than polled here.
+ */
 public class ComponentVisualisation extends HBox {
     private static final Logger logger = LoggerFactory.getLogger(ComponentVisualisation.class);
-    int heartbeat = 25;
 
-    Timeline timeline;
+    private final TextField text = new TextField();
+    private float lastValue;
 
     public ComponentVisualisation(Component component) {
         super();
@@ -31,24 +31,22 @@ public class ComponentVisualisation extends HBox {
         }
         Label label = new Label(labelText + ": ");
         this.getChildren().add(label);
-        TextField text = new TextField();
-        text.setText(String.valueOf(component.getPollData()));
+        lastValue = component.getPollData();
+        text.setText(String.valueOf(lastValue));
         text.setEditable(false);
         this.getChildren().add(text);
         // todo: analog vs digital components
         // todo: digital components with more than two values (eg D-pad)
-        timeline = new Timeline(
-                new KeyFrame(
-                        Duration.ZERO,
-                        actionEvent -> {
-                            Platform.runLater(() -> text.textProperty().set(String.valueOf(component.getPollData())));
-                        }
-                ),
-                new KeyFrame(
-                        Duration.millis(heartbeat)
-                )
-        );
-        timeline.setCycleCount(Timeline.INDEFINITE);
-        timeline.play();
+    }
+
+    /**
+     * Show a new value. This must be called on the JavaFX thread.
+     * @param value
+     */
+    void setValue(float value) {
+        if (value == lastValue)
+            return;
+        lastValue = value;
+        text.setText(String.valueOf(value));
     }
 }
@@ -0,0 +1,65 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+/**
+ * Tracks which numbered buttons are held down, so that an action fires once per press rather than once per poll.
+ */
+class ControllerButtons {
+
+	private long pressed = 0L;
+
+	/**
+	 * Update the state of a button.
+	 * @param button the button index (0-63)
+	 * @param polled the polled value of the button component
+	 * @return true if the button has just been pressed, false if it is released or was already down
+	 */
+	boolean isNewlyPressed(int button, double polled) {
+		long mask = 1L << button;
+		if (polled != 0) {
+			boolean wasPressed = (pressed & mask) != 0;
+			pressed |= mask;
+			return !wasPressed;
+		}
+		pressed &= ~mask;
+		return false;
+	}
+
+	/**
+	 * Query whether a button was down at the last update.
+	 * @param button the button index (0-63)
+	 * @return
+	 */
+	boolean isPressed(int button) {
+		return (pressed & (1L << button)) != 0;
+	}
+
+	/**
+	 * Get the state of all buttons, as a bitmask with bit {@code i} set if button {@code i} is down.
+	 * @return
+	 */
+	long getPressedMask() {
+		return pressed;
+	}
+
+}
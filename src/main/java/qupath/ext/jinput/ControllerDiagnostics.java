@@ -0,0 +1,201 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.concurrent.CountDownLatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javafx.application.Platform;
+import net.java.games.input.Controller;
+
+/**
+ * Diagnostic report for all controllers found by the current backend, including those that wouldn't be used.
+ * <p>
+ * Each controller is polled as fast as possible for a fixed time, to measure the achievable poll rate, the time
+ * taken by each call to {@link Controller#poll()}, and the noise on each analog axis while the device is left alone.
+ * The heartbeat is paused while this runs, so that the devices aren't polled from two threads at once.
+ * <p>
+ * This can be called from a script, for example:
+ * <pre>
+ * println qupath.ext.jinput.ControllerDiagnostics.run(2, "/path/to/report.txt")
+ * </pre>
+ */
+public class ControllerDiagnostics {
+
+	private static final Logger logger = LoggerFactory.getLogger(ControllerDiagnostics.class);
+
+	private ControllerDiagnostics() {}
+
+	/**
+	 * Create a diagnostic report, optionally writing it to a file.
+	 * This blocks while each controller is benchmarked, and so must not be called from the JavaFX thread.
+	 * @param secondsPerController how long to poll each controller for
+	 * @param reportPath path of a text file for the report, or null if it shouldn't be written
+	 * @return the report
+	 * @throws IOException if the report can't be written
+	 * @throws InterruptedException
+	 */
+	public static String run(double secondsPerController, String reportPath) throws IOException, InterruptedException {
+		if (Platform.isFxApplicationThread())
+			throw new IllegalStateException("Controller diagnostics cannot be run on the JavaFX thread");
+		if (secondsPerController <= 0)
+			throw new IllegalArgumentException("Benchmark duration must be positive");
+
+		var report = new StringBuilder();
+		report.append("QuPath advanced controller diagnostics").append(System.lineSeparator());
+		report.append(String.format("Date: %s%n", LocalDateTime.now()));
+		report.append(String.format("OS: %s %s (%s)%n", System.getProperty("os.name"), System.getProperty("os.version"), System.getProperty("os.arch")));
+		report.append(String.format("Java: %s (%s)%n", System.getProperty("java.version"), System.getProperty("java.vendor")));
+		report.append(String.format("Backend: %s%n", AdvancedControllerExtension.isEvdevBackendRequested() ? "evdev" : "JInput"));
+
+		boolean resume = pauseHeartbeat();
+		report.append(String.format("Heartbeat running: %s%n", resume));
+		report.append(String.format("Tile retention: %s%n", TileRetention.getInstance().getStatistics()));
+		var listener = AdvancedControllerActionFactory.getChangeListener();
+		if (listener != null) {
+			for (var controller : listener.getControllers())
+				report.append(String.format("Registered: %s (%s)%n", controller.getControllerName(), listener.getState(controller)));
+		}
+		try {
+			Controller[] controllers = AdvancedControllerActionFactory.getControllers();
+			report.append(String.format("Controllers found: %d%n", controllers.length));
+			for (var controller : controllers) {
+				report.append(System.lineSeparator());
+				benchmark(controller, secondsPerController, report);
+			}
+		} finally {
+			if (resume)
+				Platform.runLater(listener::resumePolling);
+		}
+
+		String result = report.toString();
+		logger.info("Controller diagnostics{}{}", System.lineSeparator(), result);
+		if (reportPath != null) {
+			Files.writeString(Path.of(reportPath), result);
+			logger.info("Controller diagnostics written to {}", reportPath);
+		}
+		return result;
+	}
+
+	private static void benchmark(Controller controller, double seconds, StringBuilder report) {
+		var components = controller.getComponents();
+		int nAxes = 0, nButtons = 0;
+		for (var c : components) {
+			if (c.isAnalog())
+				nAxes++;
+			else
+				nButtons++;
+		}
+		report.append(String.format("%s%n", controller.getName()));
+		report.append(String.format("  Type: %s, port: %s%n", controller.getType(), controller.getPortType()));
+		report.append(String.format("  Would be selected: %s%n", AdvancedControllerActionFactory.isCompatible(controller)));
+		report.append(String.format("  Components: %d (%d analog, %d digital), sub-controllers: %d, rumblers: %d%n",
+				components.length, nAxes, nButtons, controller.getControllers().length, controller.getRumblers().length));
+
+		// Running statistics for each analog axis
+		double[] sum = new double[components.length];
+		double[] sumSquares = new double[components.length];
+		double[] min = new double[components.length];
+		double[] max = new double[components.length];
+		for (int i = 0; i < components.length; i++) {
+			min[i] = Double.POSITIVE_INFINITY;
+			max[i] = Double.NEGATIVE_INFINITY;
+		}
+
+		var histogram = new LatencyHistogram();
+		long endTime = System.nanoTime() + Math.round(seconds * 1e9);
+		long startTime = System.nanoTime();
+		boolean ok = true;
+		while (System.nanoTime() < endTime) {
+			long before = System.nanoTime();
+			ok = controller.poll();
+			histogram.record(System.nanoTime() - before);
+			if (!ok)
+				break;
+			for (int i = 0; i < components.length; i++) {
+				if (!components[i].isAnalog())
+					continue;
+				double v = components[i].getPollData();
+				sum[i] += v;
+				sumSquares[i] += v * v;
+				min[i] = Math.min(min[i], v);
+				max[i] = Math.max(max[i], v);
+			}
+		}
+		double elapsed = (System.nanoTime() - startTime) / 1e9;
+		long n = histogram.getCount();
+
+		if (!ok)
+			report.append(String.format("  poll() returned false after %d polls - the device may have been unplugged%n", n));
+		report.append(String.format("  Poll rate: %.0f/s over %.1f s%n", n / elapsed, elapsed));
+		report.append("  poll() time: ").append(histogram.summarize()).append(System.lineSeparator());
+		for (int i = 0; i < components.length; i++) {
+			var c = components[i];
+			if (!c.isAnalog() || n == 0)
+				continue;
+			double mean = sum[i] / n;
+			double sd = Math.sqrt(Math.max(0, sumSquares[i] / n - mean * mean));
+			report.append(String.format("  Axis %s (%s)%s: mean=%.4f, sd=%.4f, range=%.4f, dead zone=%.4f%s%n",
+					c.getIdentifier(), c.getName(), c.isRelative() ? " relative" : "",
+					mean, sd, max[i] - min[i], c.getDeadZone(),
+					max[i] - min[i] > Math.max(c.getDeadZone(), 1e-6) * 2 ? " - NOISY (or moved)" : ""));
+		}
+	}
+
+	/**
+	 * Pause the heartbeat, if it is running. Controllers stay on, so that turning them off while the benchmark runs
+	 * still takes effect.
+	 * @return true if the heartbeat was paused, and so should be resumed afterwards
+	 * @throws InterruptedException
+	 */
+	private static boolean pauseHeartbeat() throws InterruptedException {
+		var listener = AdvancedControllerActionFactory.getChangeListener();
+		if (listener == null)
+			return false;
+		boolean[] paused = new boolean[1];
+		var latch = new CountDownLatch(1);
+		Platform.runLater(() -> {
+			try {
+				paused[0] = listener.pausePolling();
+			} finally {
+				latch.countDown();
+			}
+		});
+		latch.await();
+		return paused[0];
+	}
+
+	/**
+	 * Get a default location for the report, in the user's home directory.
+	 * @return
+	 */
+	static Path getDefaultReportPath() {
+		return Path.of(System.getProperty("user.home"), "qupath-controller-diagnostics.txt");
+	}
+
+}
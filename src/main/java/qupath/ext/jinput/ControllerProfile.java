@@ -0,0 +1,234 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.java.games.input.Controller;
+import qupath.lib.io.GsonTools;
+
+/**
+ * Describes how the axes and buttons of one kind of controller drive the viewer.
+ * <p>
+ * Profiles are read once from {@code controller-profiles.json} alongside this class.
+ * Each controller uses the first profile whose type and name pattern both match it (either may be omitted),
+ * or the first profile in the file if none match.
+ * <p>
+ * Each axis is mapped to a role. The value for a role is the sum over all axes mapped to it of
+ * {@code (curve(value) + offset) * scale}, where the curve raises the absolute value to a power while keeping the sign.
+ * This is enough to combine e.g. two triggers into a single zoom axis.
+ * Buttons are mapped to actions by the name of their identifier.
+ */
+class ControllerProfile {
+
+	private static final Logger logger = LoggerFactory.getLogger(ControllerProfile.class);
+
+	static final String RESOURCE_NAME = "controller-profiles.json";
+
+	/**
+	 * What an axis controls.
+	 */
+	enum AxisRole {
+		/**
+		 * Horizontal panning (and brush cursor and slide tour speed).
+		 */
+		PAN_X,
+		/**
+		 * Vertical panning (and brush cursor).
+		 */
+		PAN_Y,
+		/**
+		 * Continuous zoom; positive values zoom in.
+		 */
+		ZOOM,
+		/**
+		 * Rotation.
+		 */
+		ROTATE,
+		/**
+		 * Z-slice navigation (or brightness in display adjustment mode).
+		 */
+		PLANE_Z,
+		/**
+		 * Time point navigation (or contrast in display adjustment mode).
+		 */
+		PLANE_T
+	}
+
+	/**
+	 * What a button does when pressed.
+	 */
+	enum ButtonAction {
+		/**
+		 * Move down the magnification ladder (or paint, while the brush is active).
+		 */
+		MAGNIFICATION_DOWN,
+		/**
+		 * Move up the magnification ladder.
+		 */
+		MAGNIFICATION_UP,
+		TOGGLE_DISPLAY_ADJUSTMENT,
+		NEXT_CHANNEL,
+		PREVIOUS_ANNOTATION,
+		NEXT_ANNOTATION,
+		NEAREST_UNCLASSIFIED_DETECTION,
+		TOGGLE_TOUR,
+		PAUSE_TOUR,
+		STEP_TOUR,
+		TOGGLE_BRUSH,
+		BOOKMARK,
+		PREVIOUS_Z,
+		NEXT_Z
+	}
+
+	/**
+	 * Mapping from one axis to a role.
+	 */
+	static class AxisMapping {
+
+		String component;
+		AxisRole role;
+		double scale = 1.0;
+		double offset = 0.0;
+		double curve = 1.0;
+
+	}
+
+	String name;
+
+	/**
+	 * JInput controller type name, e.g. "Stick" or "Gamepad"; null to match any type.
+	 */
+	String type;
+
+	/**
+	 * Regular expression found (ignoring case) in the controller name; null to match any name.
+	 */
+	String namePattern;
+
+	/**
+	 * If true, pan and zoom axes only act when their value changes; otherwise they act whenever they exceed
+	 * {@link #moveThreshold}.
+	 */
+	boolean panOnChangeOnly = false;
+
+	double moveThreshold = 0.1;
+
+	/**
+	 * Reverse the pan direction (before the user's inversion preference is applied).
+	 */
+	boolean invertPan = false;
+
+	/**
+	 * Pan speed at full deflection, in screen pixels per second for a viewer {@link ViewerGeometry#REFERENCE_WIDTH}
+	 * pixels wide. The speed scales with the viewer width, but not with magnification.
+	 */
+	double panSpeed = 2000.0;
+
+	/**
+	 * Magnifications used by the magnification buttons, in increasing order.
+	 */
+	double[] magnifications = {0.25, 1, 4, 10, 40};
+
+	List<AxisMapping> axes = Collections.emptyList();
+
+	Map<String, ButtonAction> buttons = new LinkedHashMap<>();
+
+	private transient Pattern pattern;
+
+	boolean matches(Controller controller) {
+		if (type != null && !type.equalsIgnoreCase(controller.getType().toString()))
+			return false;
+		if (namePattern == null)
+			return true;
+		if (pattern == null)
+			pattern = Pattern.compile(namePattern, Pattern.CASE_INSENSITIVE);
+		return pattern.matcher(controller.getName()).find();
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+	/**
+	 * Get the profile to use for a controller.
+	 * @param controller
+	 * @return
+	 */
+	static ControllerProfile find(Controller controller) {
+		var profiles = getProfiles();
+		for (var profile : profiles) {
+			if (profile.matches(controller))
+				return profile;
+		}
+		logger.warn("No profile matches {} ({}), using {}", controller.getName(), controller.getType(), profiles.get(0));
+		return profiles.get(0);
+	}
+
+	static List<ControllerProfile> getProfiles() {
+		return ProfileHolder.PROFILES;
+	}
+
+	private static List<ControllerProfile> readProfiles() {
+		try (var reader = new InputStreamReader(ControllerProfile.class.getResourceAsStream(RESOURCE_NAME), StandardCharsets.UTF_8)) {
+			var profiles = GsonTools.getInstance().fromJson(reader, ControllerProfile[].class);
+			logger.debug("Read {} controller profiles", profiles.length);
+			return List.of(profiles);
+		} catch (Exception e) {
+			throw new IllegalStateException("Unable to read controller profiles: " + e.getLocalizedMessage(), e);
+		}
+	}
+
+	// Read the profiles on first use
+	private static class ProfileHolder {
+
+		private static final List<ControllerProfile> PROFILES = readProfiles();
+
+	}
+
+	double getHigherMagnification(double mag) {
+		for (double m : magnifications) {
+			if (m > mag + 0.0001)
+				return m;
+		}
+		return magnifications[magnifications.length - 1];
+	}
+
+	double getLowerMagnification(double mag) {
+		for (int i = magnifications.length - 1; i >= 0; i--) {
+			if (magnifications[i] < mag - 0.0001)
+				return magnifications[i];
+		}
+		return magnifications[0];
+	}
+
+}
@@ -0,0 +1,355 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.net.ConnectException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.gui.viewer.QuPathViewer;
+
+/**
+ * Publishes controller and viewer state to local processes over a Unix domain socket.
+ * <p>
+ * Each frame is {@link #FRAME_SIZE} bytes, big-endian:
+ * <pre>
+ *  0  int    magic ('QPJI')
+ *  4  short  format version (1)
+ *  6  short  number of valid component values (max 16)
+ *  8  long   sequence number
+ * 16  long   timestamp (System.nanoTime())
+ * 24  double viewer centre x (full-resolution pixels)
+ * 32  double viewer centre y
+ * 40  double viewer downsample
+ * 48  double viewer rotation (radians)
+ * 56  int    z-slice
+ * 60  int    time point
+ * 64  float  component values, in controller order (16 values)
+ * </pre>
+ * Publishing never blocks: the latest frame is held in a single slot, and a background thread writes it to every
+ * subscriber that is ready for it.
+ * A subscriber that cannot keep up simply misses intermediate frames and receives the most recent one when it is next
+ * writable.
+ */
+class ControllerStateServer implements AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(ControllerStateServer.class);
+
+	static final int MAGIC = 0x51504A49;
+	static final short VERSION = 1;
+	static final int MAX_COMPONENTS = 16;
+	static final int FRAME_SIZE = 64 + MAX_COMPONENTS * Float.BYTES;
+
+	// File type bits of st_mode, and the value for a socket
+	private static final int S_IFMT = 0170000;
+	private static final int S_IFSOCK = 0140000;
+
+	private final Path path;
+	private final ServerSocketChannel serverChannel;
+	private final Selector selector;
+	private final Thread thread;
+
+	// Latest frame, guarded by a sequence lock: odd while being written
+	private final ByteBuffer frame = ByteBuffer.allocate(FRAME_SIZE);
+	private volatile long frameVersion = 0;
+	private long sequence = 0;
+
+	private volatile int subscriberCount = 0;
+	private volatile boolean closed = false;
+
+	private ControllerStateServer(Path path) throws IOException {
+		this.path = path;
+		removeStaleSocket(path);
+		serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		serverChannel.bind(UnixDomainSocketAddress.of(path));
+		serverChannel.configureBlocking(false);
+		selector = Selector.open();
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		thread = new Thread(this::run, "controller-state-server");
+		thread.setDaemon(true);
+	}
+
+	/**
+	 * Create and start a server bound to the specified socket path.
+	 * A socket left behind by a process that has exited is replaced, but any other existing file is left alone.
+	 * @param path
+	 * @return
+	 * @throws IOException if the path exists and isn't a socket, if another process is listening on it,
+	 *                     or if the socket can't be bound
+	 */
+	static ControllerStateServer start(Path path) throws IOException {
+		var server = new ControllerStateServer(path);
+		server.thread.start();
+		logger.info("Publishing controller state to {}", path);
+		return server;
+	}
+
+	Path getPath() {
+		return path;
+	}
+
+	/**
+	 * Delete a socket file at the path if nothing is listening on it.
+	 * @param path
+	 * @throws IOException if the path exists, but isn't a stale socket
+	 */
+	private static void removeStaleSocket(Path path) throws IOException {
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+		} catch (NoSuchFileException e) {
+			return;
+		}
+		if (!isSocket(path, attributes))
+			throw new IOException(path + " already exists and is not a socket");
+		try (var channel = SocketChannel.open(UnixDomainSocketAddress.of(path))) {
+			throw new IOException(path + " is already in use by another process");
+		} catch (ConnectException e) {
+			logger.debug("Removing stale socket {}", path);
+		}
+		Files.delete(path);
+	}
+
+	private static boolean isSocket(Path path, BasicFileAttributes attributes) throws IOException {
+		try {
+			int mode = (Integer)Files.getAttribute(path, "unix:mode", LinkOption.NOFOLLOW_LINKS);
+			return (mode & S_IFMT) == S_IFSOCK;
+		} catch (UnsupportedOperationException | IllegalArgumentException e) {
+			// Without the unix attribute view we can't distinguish sockets from other special files
+			return attributes.isOther();
+		}
+	}
+
+	int getSubscriberCount() {
+		return subscriberCount;
+	}
+
+	/**
+	 * Publish the current state. This should only be called from one thread (the FX thread, in practice).
+	 * @param viewer the viewer being controlled (may be null)
+	 * @param event the latest controller event
+	 */
+	void publish(QuPathViewer viewer, InputEvent event) {
+		if (subscriberCount == 0)
+			return;
+
+		long v = frameVersion;
+		frameVersion = v + 1;
+		VarHandle.storeStoreFence();
+
+		int n = Math.min(event.getComponentCount(), MAX_COMPONENTS);
+		frame.clear();
+		frame.putInt(MAGIC);
+		frame.putShort(VERSION);
+		frame.putShort((short)n);
+		frame.putLong(++sequence);
+		frame.putLong(event.getTimestamp());
+		if (viewer != null && viewer.hasServer()) {
+			frame.putDouble(viewer.getCenterPixelX());
+			frame.putDouble(viewer.getCenterPixelY());
+			frame.putDouble(viewer.getDownsampleFactor());
+			frame.putDouble(viewer.getRotation());
+			frame.putInt(viewer.getZPosition());
+			frame.putInt(viewer.getTPosition());
+		} else {
+			frame.putDouble(Double.NaN);
+			frame.putDouble(Double.NaN);
+			frame.putDouble(Double.NaN);
+			frame.putDouble(0);
+			frame.putInt(0);
+			frame.putInt(0);
+		}
+		for (int i = 0; i < MAX_COMPONENTS; i++)
+			frame.putFloat(i < n ? event.getValue(i) : 0f);
+
+		frameVersion = v + 2;
+		selector.wakeup();
+	}
+
+	/**
+	 * Copy the latest complete frame into the buffer, which is left ready to be written.
+	 * @return the version of the frame that was copied
+	 */
+	private long copyFrame(ByteBuffer target) {
+		var source = frame.array();
+		while (true) {
+			long v1 = frameVersion;
+			if ((v1 & 1L) == 0) {
+				target.clear();
+				target.put(source, 0, FRAME_SIZE);
+				VarHandle.loadLoadFence();
+				if (frameVersion == v1) {
+					target.flip();
+					return v1;
+				}
+			}
+			Thread.onSpinWait();
+		}
+	}
+
+	private void run() {
+		try {
+			while (!closed) {
+				selector.select();
+				var iter = selector.selectedKeys().iterator();
+				while (iter.hasNext()) {
+					var key = iter.next();
+					iter.remove();
+					if (!key.isValid())
+						continue;
+					if (key.isAcceptable())
+						accept();
+					else if (key.isReadable())
+						discardInput(key);
+				}
+				sendLatest();
+			}
+		} catch (ClosedSelectorException e) {
+			logger.debug("Controller state selector closed");
+		} catch (IOException e) {
+			logger.error("Controller state server stopped: " + e.getLocalizedMessage(), e);
+		} finally {
+			shutdown();
+		}
+	}
+
+	private void shutdown() {
+		try {
+			for (var key : selector.keys())
+				key.channel().close();
+			selector.close();
+			Files.deleteIfExists(path);
+		} catch (IOException e) {
+			logger.warn("Error closing controller state server: {}", e.getLocalizedMessage());
+		}
+		subscriberCount = 0;
+		logger.info("Stopped publishing controller state to {}", path);
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel = serverChannel.accept();
+		if (channel == null)
+			return;
+		channel.configureBlocking(false);
+		channel.register(selector, SelectionKey.OP_READ, new Subscriber());
+		subscriberCount++;
+		logger.debug("Controller state subscriber connected ({} total)", subscriberCount);
+	}
+
+	/**
+	 * Subscribers aren't expected to send anything, but we need to read to notice when they disconnect.
+	 */
+	private void discardInput(SelectionKey key) {
+		var subscriber = (Subscriber)key.attachment();
+		try {
+			subscriber.input.clear();
+			if (((SocketChannel)key.channel()).read(subscriber.input) < 0)
+				disconnect(key);
+		} catch (IOException e) {
+			disconnect(key);
+		}
+	}
+
+	private void sendLatest() {
+		long latest = frameVersion;
+		Iterator<SelectionKey> iter = selector.keys().iterator();
+		while (iter.hasNext()) {
+			var key = iter.next();
+			if (!key.isValid() || !(key.attachment() instanceof Subscriber subscriber))
+				continue;
+			try {
+				var channel = (SocketChannel)key.channel();
+				// Finish any partially-written frame first, otherwise the stream would be corrupted,
+				// then follow it with the latest frame if it has changed in the meantime
+				while (true) {
+					if (!subscriber.output.hasRemaining()) {
+						if (subscriber.version >= latest)
+							break;
+						subscriber.version = copyFrame(subscriber.output);
+					}
+					channel.write(subscriber.output);
+					if (subscriber.output.hasRemaining())
+						break;
+				}
+				// If the subscriber isn't keeping up, wait until it's writable again - any frames published
+				// in the meantime are dropped
+				int ops = subscriber.output.hasRemaining() ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+				if (key.interestOps() != ops)
+					key.interestOps(ops);
+			} catch (IOException e) {
+				disconnect(key);
+			}
+		}
+	}
+
+	private void disconnect(SelectionKey key) {
+		key.cancel();
+		try {
+			key.channel().close();
+		} catch (IOException e) {
+			logger.debug("Error closing subscriber: {}", e.getLocalizedMessage());
+		}
+		subscriberCount--;
+		logger.debug("Controller state subscriber disconnected ({} remaining)", subscriberCount);
+	}
+
+	/**
+	 * Stop the server, and wait briefly for the server thread to disconnect subscribers and remove the socket file.
+	 * Waiting means that a new server can be started at the same path straight away.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		selector.wakeup();
+		try {
+			thread.join(1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static class Subscriber {
+
+		private final ByteBuffer output = ByteBuffer.allocate(FRAME_SIZE).flip();
+		private final ByteBuffer input = ByteBuffer.allocate(64);
+		private long version = 0;
+
+	}
+
+}
@@ -0,0 +1,192 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javafx.application.Platform;
+import net.java.games.input.Controller;
+import net.java.games.input.Controller.Type;
+import qupath.lib.common.ThreadTools;
+import qupath.lib.gui.QuPathGUI;
+
+/**
+ * Soak and stress test for the controller loop, using synthetic controllers attached to a live QuPath instance.
+ * <p>
+ * The loop is driven from a scheduler at the requested rate, with each tick run on the JavaFX thread just as the
+ * heartbeat timeline would. While it runs, the harness samples the heap and thread count; at the end it reports
+ * tick duration and scheduling latency percentiles, allocation on the JavaFX thread, and heap and thread growth.
+ * <p>
+ * This is intended to be called from a script, for example:
+ * <pre>
+ * println qupath.ext.jinput.ControllerStressHarness.run(getQuPath(), 4, "noise", 600, 200)
+ * </pre>
+ * The synthetic input really does move the current viewer, so use a disposable image.
+ */
+public class ControllerStressHarness {
+
+	private static final Logger logger = LoggerFactory.getLogger(ControllerStressHarness.class);
+
+	/**
+	 * Maximum number of ticks waiting on the JavaFX thread; beyond this, ticks are dropped rather than queued.
+	 */
+	private static final int MAX_PENDING = 100;
+
+	private ControllerStressHarness() {}
+
+	/**
+	 * Run the harness. This blocks until complete, and must not be called from the JavaFX thread.
+	 * @param qupath the QuPath instance whose viewer should be driven
+	 * @param nControllers number of synthetic controllers, alternating between stick and gamepad
+	 * @param waveform one of "noise", "sweep" or "button_storm"
+	 * @param durationSeconds how long to run for
+	 * @param ticksPerSecond how often to run the loop (the normal heartbeat is 50 per second)
+	 * @return a plain text report
+	 * @throws InterruptedException
+	 */
+	public static String run(QuPathGUI qupath, int nControllers, String waveform, double durationSeconds, double ticksPerSecond) throws InterruptedException {
+		if (Platform.isFxApplicationThread())
+			throw new IllegalStateException("The stress harness cannot be run on the JavaFX thread");
+		if (nControllers < 1 || ticksPerSecond <= 0 || durationSeconds <= 0)
+			throw new IllegalArgumentException("Number of controllers, tick rate and duration must all be positive");
+		var wave = SyntheticController.Waveform.valueOf(waveform.toUpperCase(Locale.ROOT));
+
+		List<Controller> controllers = new ArrayList<>();
+		for (int i = 0; i < nControllers; i++) {
+			var type = i % 2 == 0 ? Type.STICK : Type.GAMEPAD;
+			controllers.add(new SyntheticController("Synthetic " + type + " " + i, type, wave, 1.0, i));
+		}
+		var listener = new AdvancedControllerActionFactory.ControllerChangeListener(qupath, () -> controllers);
+
+		var threadBean = ManagementFactory.getThreadMXBean();
+		var memoryBean = ManagementFactory.getMemoryMXBean();
+		var allocationBean = threadBean instanceof com.sun.management.ThreadMXBean bean && bean.isThreadAllocatedMemorySupported() ? bean : null;
+
+		// Register controllers & find the FX thread, all on the FX thread
+		var fxThreadId = new AtomicLong();
+		runAndWait(() -> {
+			listener.registerControllers();
+			fxThreadId.set(Thread.currentThread().getId());
+		});
+
+		System.gc();
+		long heapStart = memoryBean.getHeapMemoryUsage().getUsed();
+		long heapMax = heapStart;
+		int threadsStart = threadBean.getThreadCount();
+		int threadsMax = threadsStart;
+		long allocatedStart = allocationBean == null ? -1 : allocationBean.getThreadAllocatedBytes(fxThreadId.get());
+
+		var tickDurations = new LatencyHistogram();
+		var tickLatencies = new LatencyHistogram();
+		var pending = new AtomicInteger();
+		var dropped = new AtomicLong();
+
+		long periodNanos = Math.max(1L, Math.round(1e9 / ticksPerSecond));
+		var scheduler = Executors.newSingleThreadScheduledExecutor(ThreadTools.createThreadFactory("controller-stress-", true));
+		scheduler.scheduleAtFixedRate(() -> {
+			if (pending.incrementAndGet() > MAX_PENDING) {
+				pending.decrementAndGet();
+				dropped.incrementAndGet();
+				return;
+			}
+			long submitted = System.nanoTime();
+			Platform.runLater(() -> {
+				long start = System.nanoTime();
+				listener.tick();
+				long end = System.nanoTime();
+				tickDurations.record(end - start);
+				tickLatencies.record(end - submitted);
+				pending.decrementAndGet();
+			});
+		}, 0L, periodNanos, TimeUnit.NANOSECONDS);
+
+		logger.info("Stress test: {} {} controller(s) at {} ticks/s for {} s", nControllers, wave, ticksPerSecond, durationSeconds);
+		long startMillis = System.currentTimeMillis();
+		long endMillis = startMillis + Math.round(durationSeconds * 1000);
+		long nextLog = startMillis + 60_000L;
+		while (System.currentTimeMillis() < endMillis) {
+			Thread.sleep(Math.min(1000L, Math.max(1L, endMillis - System.currentTimeMillis())));
+			heapMax = Math.max(heapMax, memoryBean.getHeapMemoryUsage().getUsed());
+			threadsMax = Math.max(threadsMax, threadBean.getThreadCount());
+			if (System.currentTimeMillis() >= nextLog) {
+				logger.info("Stress test: {} s elapsed, heap {} MB, {} threads",
+						(System.currentTimeMillis() - startMillis) / 1000, toMB(memoryBean.getHeapMemoryUsage().getUsed()), threadBean.getThreadCount());
+				nextLog += 60_000L;
+			}
+		}
+		scheduler.shutdownNow();
+		scheduler.awaitTermination(5, TimeUnit.SECONDS);
+
+		// Let queued ticks complete & read the histograms on the FX thread, where they were written
+		var report = new StringBuilder();
+		long elapsedMillis = System.currentTimeMillis() - startMillis;
+		runAndWait(() -> {
+			long allocated = allocationBean == null ? -1 : allocationBean.getThreadAllocatedBytes(fxThreadId.get()) - allocatedStart;
+			report.append(String.format("Controllers: %d x %s, %.1f ticks/s requested, %.1f s%n", nControllers, wave, ticksPerSecond, elapsedMillis / 1000.0));
+			report.append(String.format("Ticks run: %d (%.1f/s), dropped: %d%n", tickDurations.getCount(), tickDurations.getCount() * 1000.0 / elapsedMillis, dropped.get()));
+			report.append("Tick duration: ").append(tickDurations.summarize()).append(System.lineSeparator());
+			report.append("Scheduling to completion: ").append(tickLatencies.summarize()).append(System.lineSeparator());
+			if (allocated >= 0)
+				report.append(String.format("FX thread allocation: %.1f MB total, %.1f KB/s, %.1f bytes/tick%n",
+						allocated / 1024.0 / 1024.0, allocated / 1024.0 / (elapsedMillis / 1000.0), (double)allocated / Math.max(1, tickDurations.getCount())));
+		});
+
+		System.gc();
+		long heapEnd = memoryBean.getHeapMemoryUsage().getUsed();
+		int threadsEnd = threadBean.getThreadCount();
+		report.append(String.format("Heap after GC: %d MB -> %d MB (%+d MB), peak %d MB%n",
+				toMB(heapStart), toMB(heapEnd), toMB(heapEnd) - toMB(heapStart), toMB(heapMax)));
+		report.append(String.format("Threads: %d -> %d (%+d), peak %d%n", threadsStart, threadsEnd, threadsEnd - threadsStart, threadsMax));
+
+		String result = report.toString();
+		logger.info("Stress test complete{}{}", System.lineSeparator(), result);
+		return result;
+	}
+
+	private static long toMB(long bytes) {
+		return bytes / 1024L / 1024L;
+	}
+
+	private static void runAndWait(Runnable runnable) throws InterruptedException {
+		var latch = new CountDownLatch(1);
+		Platform.runLater(() -> {
+			try {
+				runnable.run();
+			} finally {
+				latch.countDown();
+			}
+		});
+		latch.await();
+	}
+
+}
@@ -0,0 +1,154 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.display.ChannelDisplayInfo;
+import qupath.lib.display.ImageDisplay;
+import qupath.lib.gui.viewer.QuPathViewer;
+
+/**
+ * Adjusts the brightness and contrast of one of the selected channels from controller axes.
+ * <p>
+ * Changing the display range causes the whole viewer to be re-rendered, which is expensive for images with many channels.
+ * Axis movements are therefore accumulated locally, and only written to the {@link ImageDisplay} occasionally while
+ * the axis is moving (to give some feedback) and then once more when it has settled.
+ */
+class DisplayRangeAdjuster {
+
+	private static final Logger logger = LoggerFactory.getLogger(DisplayRangeAdjuster.class);
+
+	/**
+	 * Fraction of the allowed range to shift per heartbeat at full deflection.
+	 */
+	static final double BRIGHTNESS_RATE = 0.01;
+
+	/**
+	 * Fraction by which to scale the display range per heartbeat at full deflection.
+	 */
+	static final double CONTRAST_RATE = 0.02;
+
+	static final double AXIS_THRESHOLD = 0.1;
+
+	/**
+	 * Heartbeats between preview updates while the axes are moving.
+	 */
+	static final int PREVIEW_TICKS = 10;
+
+	/**
+	 * Heartbeats with the axes at rest before the final range is applied.
+	 */
+	static final int SETTLE_TICKS = 5;
+
+	private int channelIndex = 0;
+
+	private ImageDisplay display;
+	private ChannelDisplayInfo channel;
+	private double pendingMin, pendingMax;
+	private boolean pending = false;
+
+	private int movingTicks = 0;
+	private int restingTicks = 0;
+
+	/**
+	 * Update from the controller axes.
+	 * @param viewer
+	 * @param brightness value in the range -1 to 1 that shifts the display range
+	 * @param contrast value in the range -1 to 1 that narrows (positive) or widens (negative) the display range
+	 */
+	void update(QuPathViewer viewer, double brightness, double contrast) {
+		boolean moving = Math.abs(brightness) >= AXIS_THRESHOLD || Math.abs(contrast) >= AXIS_THRESHOLD;
+		if (!moving) {
+			movingTicks = 0;
+			if (pending && ++restingTicks >= SETTLE_TICKS)
+				commit();
+			return;
+		}
+		restingTicks = 0;
+
+		if (!pending && !startPending(viewer))
+			return;
+
+		double allowed = channel.getMaxAllowed() - channel.getMinAllowed();
+		if (allowed <= 0)
+			return;
+
+		double shift = brightness * allowed * BRIGHTNESS_RATE;
+		double centre = (pendingMin + pendingMax) / 2.0 - shift;
+		double halfWidth = (pendingMax - pendingMin) / 2.0 * (1.0 - contrast * CONTRAST_RATE);
+		halfWidth = Math.max(halfWidth, allowed * 1e-4);
+		pendingMin = centre - halfWidth;
+		pendingMax = centre + halfWidth;
+
+		if (++movingTicks % PREVIEW_TICKS == 0)
+			apply();
+	}
+
+	/**
+	 * Move on to the next selected channel, applying any pending change first.
+	 * @param viewer
+	 */
+	void nextChannel(QuPathViewer viewer) {
+		flush();
+		channelIndex++;
+		var selected = viewer.getImageDisplay() == null ? null : viewer.getImageDisplay().selectedChannels();
+		if (selected != null && !selected.isEmpty())
+			logger.info("Controller display adjustment: {}", selected.get(channelIndex % selected.size()).getName());
+	}
+
+	/**
+	 * Apply any pending change immediately.
+	 */
+	void flush() {
+		if (pending)
+			commit();
+	}
+
+	private boolean startPending(QuPathViewer viewer) {
+		display = viewer.getImageDisplay();
+		if (display == null)
+			return false;
+		var selected = display.selectedChannels();
+		if (selected.isEmpty())
+			return false;
+		channel = selected.get(channelIndex % selected.size());
+		pendingMin = channel.getMinDisplay();
+		pendingMax = channel.getMaxDisplay();
+		pending = true;
+		return true;
+	}
+
+	private void apply() {
+		display.setMinMaxDisplay(channel, (float)pendingMin, (float)pendingMax);
+	}
+
+	private void commit() {
+		apply();
+		pending = false;
+		display = null;
+		channel = null;
+		restingTicks = 0;
+	}
+
+}
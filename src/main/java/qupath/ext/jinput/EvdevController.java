@@ -0,0 +1,395 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.java.games.input.AbstractComponent;
+import net.java.games.input.AbstractController;
+import net.java.games.input.Component;
+import net.java.games.input.Component.Identifier;
+import net.java.games.input.Controller;
+import net.java.games.input.Event;
+import net.java.games.input.Rumbler;
+
+/**
+ * A JInput {@link Controller} that reads Linux evdev events directly from a channel (usually {@code /dev/input/eventN}).
+ * <p>
+ * A reader thread blocks on the channel and decodes each {@code struct input_event} from a reused direct buffer as
+ * soon as it arrives, so {@link #poll()} only needs to pick up the latest values.
+ * Because any {@link ReadableByteChannel} can be used, recorded event bytes can be replayed from a file or pipe.
+ * <p>
+ * The kernel's axis ranges can only be queried with an ioctl, which isn't possible from pure Java.
+ * Ranges are therefore initialised from the device type and widened whenever a larger value is seen;
+ * centred axes are widened symmetrically, so that their rest position stays at 0.
+ * <p>
+ * Relative axes (e.g. 3D mice that report {@code EV_REL}) only send events while they are moved, because the kernel
+ * drops zero-valued relative events. Their values therefore only last for one report: any relative axis without an
+ * event in a report returns to 0 at its {@code SYN_REPORT}.
+ */
+class EvdevController extends AbstractController {
+
+	private static final Logger logger = LoggerFactory.getLogger(EvdevController.class);
+
+	static final int EV_SYN = 0x00;
+	static final int EV_KEY = 0x01;
+	static final int EV_REL = 0x02;
+	static final int EV_ABS = 0x03;
+
+	static final int SYN_REPORT = 0x00;
+
+	static final int BTN_MISC = 0x100;
+	static final int BTN_GAMEPAD = 0x130;
+
+	private static final int N_AXES = 6;
+	private static final int N_BUTTONS = 16;
+
+	private static final Identifier[] AXIS_IDS = {
+			Identifier.Axis.X, Identifier.Axis.Y, Identifier.Axis.Z,
+			Identifier.Axis.RX, Identifier.Axis.RY, Identifier.Axis.RZ
+	};
+
+	private static final Identifier[] BUTTON_IDS = {
+			Identifier.Button._0, Identifier.Button._1, Identifier.Button._2, Identifier.Button._3,
+			Identifier.Button._4, Identifier.Button._5, Identifier.Button._6, Identifier.Button._7,
+			Identifier.Button._8, Identifier.Button._9, Identifier.Button._10, Identifier.Button._11,
+			Identifier.Button._12, Identifier.Button._13, Identifier.Button._14, Identifier.Button._15
+	};
+
+	/**
+	 * Size of {@code struct input_event}: a timeval followed by type, code and value.
+	 */
+	static final int EVENT_SIZE = "32".equals(System.getProperty("sun.arch.data.model")) ? 16 : 24;
+
+	private final Type type;
+	private final ReadableByteChannel channel;
+	private final int buttonBase;
+	private final EvdevAxis[] axes;
+	private final EvdevButton[] buttons;
+
+	private final Thread reader;
+	private volatile IOException readException;
+
+	private volatile EvdevListener listener;
+
+	/**
+	 * Receives axis changes as soon as they are read, on the reader thread.
+	 */
+	@FunctionalInterface
+	interface EvdevListener {
+
+		/**
+		 * @param component the component that changed
+		 * @param value the new normalised value
+		 * @param timestampMicros the kernel timestamp of the event, in microseconds
+		 */
+		void componentChanged(Component component, float value, long timestampMicros);
+
+	}
+
+	/**
+	 * Create a controller reading from the specified channel. Call {@link #start()} to begin reading.
+	 * @param name
+	 * @param type either {@link Type#GAMEPAD} or {@link Type#STICK}
+	 * @param channel
+	 * @param axisRange initial range of symmetric axes, e.g. 350 for 3Dconnexion devices or 32767 for gamepad sticks
+	 */
+	EvdevController(String name, Type type, ReadableByteChannel channel, float axisRange) {
+		this(name, type, channel, createAxes(type, axisRange), createButtons());
+	}
+
+	private EvdevController(String name, Type type, ReadableByteChannel channel, EvdevAxis[] axes, EvdevButton[] buttons) {
+		super(name, concat(axes, buttons), new Controller[0], new Rumbler[0]);
+		this.type = type;
+		this.channel = channel;
+		this.axes = axes;
+		this.buttons = buttons;
+		this.buttonBase = type == Type.GAMEPAD ? BTN_GAMEPAD : BTN_MISC;
+		this.reader = new Thread(this::readEvents, "evdev-" + name);
+		this.reader.setDaemon(true);
+	}
+
+	private static EvdevAxis[] createAxes(Type type, float axisRange) {
+		var axes = new EvdevAxis[N_AXES];
+		for (int i = 0; i < N_AXES; i++) {
+			// Gamepad triggers (usually ABS_Z and ABS_RZ) report 0-255, and rest at 0
+			if (type == Type.GAMEPAD && (i == 2 || i == 5))
+				axes[i] = new EvdevAxis(AXIS_IDS[i], 0, 255);
+			else
+				axes[i] = new EvdevAxis(AXIS_IDS[i], axisRange);
+		}
+		return axes;
+	}
+
+	private static EvdevButton[] createButtons() {
+		var buttons = new EvdevButton[N_BUTTONS];
+		for (int i = 0; i < N_BUTTONS; i++)
+			buttons[i] = new EvdevButton(BUTTON_IDS[i]);
+		return buttons;
+	}
+
+	private static Component[] concat(EvdevAxis[] axes, EvdevButton[] buttons) {
+		List<Component> components = new ArrayList<>(List.of(axes));
+		components.addAll(List.of(buttons));
+		return components.toArray(Component[]::new);
+	}
+
+	/**
+	 * Start the reader thread.
+	 */
+	void start() {
+		reader.start();
+	}
+
+	/**
+	 * Set a listener to be notified of each change as it is read, or null to remove it.
+	 * @param listener
+	 */
+	void setListener(EvdevListener listener) {
+		this.listener = listener;
+	}
+
+	@Override
+	public Type getType() {
+		return type;
+	}
+
+	@Override
+	protected void pollDevice() throws IOException {
+		// Values are updated by the reader thread; we only need to report if it has failed
+		var e = readException;
+		if (e != null)
+			throw e;
+	}
+
+	@Override
+	protected boolean getNextDeviceEvent(Event event) throws IOException {
+		return false;
+	}
+
+	private void readEvents() {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(EVENT_SIZE * 64).order(ByteOrder.nativeOrder());
+		try {
+			while (true) {
+				if (channel.read(buffer) < 0)
+					throw new IOException("End of input for " + getName());
+				buffer.flip();
+				while (buffer.remaining() >= EVENT_SIZE)
+					decode(buffer);
+				buffer.compact();
+			}
+		} catch (IOException e) {
+			logger.warn("Stopped reading {}: {}", getName(), e.getLocalizedMessage());
+			readException = e;
+		}
+	}
+
+	/**
+	 * Decode one {@code struct input_event} at the buffer's position, advancing the position.
+	 * @param buffer
+	 */
+	void decode(ByteBuffer buffer) {
+		long sec, usec;
+		if (EVENT_SIZE == 24) {
+			sec = buffer.getLong();
+			usec = buffer.getLong();
+		} else {
+			sec = buffer.getInt();
+			usec = buffer.getInt();
+		}
+		int type = buffer.getShort() & 0xFFFF;
+		int code = buffer.getShort() & 0xFFFF;
+		int value = buffer.getInt();
+		long micros = sec * 1_000_000L + usec;
+
+		Component changed = null;
+		float normalised = 0f;
+		if (type == EV_SYN) {
+			if (code == SYN_REPORT)
+				endReport(micros);
+			return;
+		} else if ((type == EV_ABS || type == EV_REL) && code < N_AXES) {
+			var axis = axes[code];
+			normalised = axis.update(value);
+			if (type == EV_REL) {
+				axis.relative = true;
+				axis.reported = true;
+			}
+			changed = axis;
+		} else if (type == EV_KEY) {
+			int index = code - buttonBase;
+			if (index >= 0 && index < N_BUTTONS) {
+				normalised = value == 0 ? 0f : 1f;
+				buttons[index].value = normalised;
+				changed = buttons[index];
+			}
+		} else
+			return;
+
+		if (changed == null)
+			return;
+		var l = listener;
+		if (l != null)
+			l.componentChanged(changed, normalised, micros);
+	}
+
+	/**
+	 * Return relative axes that weren't reported since the last {@code SYN_REPORT} to rest.
+	 * @param micros timestamp of the report
+	 */
+	private void endReport(long micros) {
+		var l = listener;
+		for (var axis : axes) {
+			if (axis.relative && !axis.reported && axis.value != 0f) {
+				axis.value = 0f;
+				if (l != null)
+					l.componentChanged(axis, 0f, micros);
+			}
+			axis.reported = false;
+		}
+	}
+
+	/**
+	 * Stop reading, and close the channel.
+	 */
+	void close() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			logger.debug("Error closing {}: {}", getName(), e.getLocalizedMessage());
+		}
+	}
+
+
+	static class EvdevAxis extends AbstractComponent {
+
+		/**
+		 * Dead zone for centred axes, which (unlike JInput's native plugins) can't be read from the device.
+		 */
+		static final float DEAD_ZONE = 0.05f;
+
+		private final boolean centred;
+		private float min, max;
+		private volatile float value = 0f;
+
+		// Set by EV_REL events, and only accessed by the reader thread
+		private boolean relative = false;
+		private boolean reported = false;
+
+		/**
+		 * Create an axis centred on 0, such as a stick or 3D mouse axis.
+		 * @param id
+		 * @param range initial maximum absolute value
+		 */
+		EvdevAxis(Identifier id, float range) {
+			super(id.getName(), id);
+			this.centred = true;
+			this.min = -range;
+			this.max = range;
+		}
+
+		/**
+		 * Create an axis with a fixed rest position at one end, such as a trigger.
+		 * @param id
+		 * @param min
+		 * @param max
+		 */
+		EvdevAxis(Identifier id, float min, float max) {
+			super(id.getName(), id);
+			this.centred = false;
+			this.min = min;
+			this.max = max;
+		}
+
+		/**
+		 * Update from a raw value, and return the value normalised to the range -1 to 1.
+		 * Centred axes always map 0 to 0, even if only one side of the range has been widened.
+		 */
+		float update(int raw) {
+			float normalised;
+			if (centred) {
+				max = Math.max(max, Math.abs((float)raw));
+				min = -max;
+				normalised = raw / max;
+			} else {
+				if (raw < min)
+					min = raw;
+				if (raw > max)
+					max = raw;
+				normalised = 2f * (raw - min) / (max - min) - 1f;
+			}
+			value = normalised;
+			return normalised;
+		}
+
+		@Override
+		public float getDeadZone() {
+			return centred ? DEAD_ZONE : 0f;
+		}
+
+		@Override
+		protected float poll() {
+			return value;
+		}
+
+		@Override
+		public boolean isAnalog() {
+			return true;
+		}
+
+		@Override
+		public boolean isRelative() {
+			return false;
+		}
+
+	}
+
+
+	static class EvdevButton extends AbstractComponent {
+
+		private volatile float value = 0f;
+
+		EvdevButton(Identifier id) {
+			super(id.getName(), id);
+		}
+
+		@Override
+		protected float poll() {
+			return value;
+		}
+
+		@Override
+		public boolean isRelative() {
+			return false;
+		}
+
+	}
+
+}
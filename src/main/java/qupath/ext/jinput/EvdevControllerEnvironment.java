@@ -0,0 +1,200 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.java.games.input.Controller;
+import net.java.games.input.Controller.Type;
+import net.java.games.input.ControllerEnvironment;
+import qupath.lib.common.GeneralTools;
+
+/**
+ * Controller environment for Linux that reads {@code /dev/input/event*} directly, without JInput's native library.
+ * <p>
+ * Like the default JInput environment, devices are only discovered once - they need to be plugged in before
+ * the controllers are first requested.
+ * Reading the devices usually requires the user to be in the {@code input} group.
+ */
+class EvdevControllerEnvironment extends ControllerEnvironment {
+
+	private static final Logger logger = LoggerFactory.getLogger(EvdevControllerEnvironment.class);
+
+	private static final Path SYS_INPUT = Paths.get("/sys/class/input");
+	private static final Path DEV_INPUT = Paths.get("/dev/input");
+
+	// Vendor IDs used by 3Dconnexion devices
+	private static final String VENDOR_LOGITECH = "046d";
+	private static final String VENDOR_3DCONNEXION = "256f";
+
+	private static final int ABS_RX = 3;
+
+	// Axes X, Y, Z, RX, RY and RZ, which share codes for ABS and REL events
+	private static final int N_AXES = 6;
+
+	// Set in device/properties for motion sensors, e.g. the accelerometer that some gamepads expose as a separate device
+	private static final int INPUT_PROP_ACCELEROMETER = 0x06;
+
+	private static EvdevControllerEnvironment instance;
+
+	private Controller[] controllers;
+
+	private EvdevControllerEnvironment() {}
+
+	static synchronized EvdevControllerEnvironment getInstance() {
+		if (instance == null)
+			instance = new EvdevControllerEnvironment();
+		return instance;
+	}
+
+	@Override
+	public boolean isSupported() {
+		return GeneralTools.isLinux() && Files.isDirectory(SYS_INPUT);
+	}
+
+	@Override
+	public synchronized Controller[] getControllers() {
+		if (controllers == null)
+			controllers = isSupported() ? scan() : new Controller[0];
+		return controllers;
+	}
+
+	private static Controller[] scan() {
+		List<Controller> list = new ArrayList<>();
+		try (var stream = Files.newDirectoryStream(SYS_INPUT, "event*")) {
+			for (Path sysPath : stream) {
+				try {
+					var controller = open(sysPath);
+					if (controller != null)
+						list.add(controller);
+				} catch (IOException e) {
+					logger.warn("Unable to open {}: {}", sysPath.getFileName(), e.getLocalizedMessage());
+				}
+			}
+		} catch (IOException e) {
+			logger.error("Unable to list input devices: " + e.getLocalizedMessage(), e);
+		}
+		return list.toArray(Controller[]::new);
+	}
+
+	private static EvdevController open(Path sysPath) throws IOException {
+		Path device = sysPath.resolve("device");
+		String name = readString(device.resolve("name"));
+		String vendor = readString(device.resolve("id").resolve("vendor"));
+		String key = readString(device.resolve("capabilities").resolve("key"));
+		String abs = readString(device.resolve("capabilities").resolve("abs"));
+		String rel = readString(device.resolve("capabilities").resolve("rel"));
+		String properties = readString(device.resolve("properties"));
+
+		Type type = getType(name, vendor, key, abs, rel, properties);
+		if (type == null) {
+			logger.debug("Skipping evdev device: {}", name);
+			return null;
+		}
+		float axisRange = type == Type.STICK ? 350f : 32767f;
+
+		Path devPath = DEV_INPUT.resolve(sysPath.getFileName());
+		if (!Files.isReadable(devPath)) {
+			logger.warn("Cannot read {} ({}) - is the user in the 'input' group?", devPath, name);
+			return null;
+		}
+		logger.info("Registering evdev controller: {}, {} ({})", name, type, devPath);
+		var controller = new EvdevController(name, type, FileChannel.open(devPath, StandardOpenOption.READ), axisRange);
+		controller.start();
+		return controller;
+	}
+
+	/**
+	 * Decide how a device should be used, from its sysfs name, vendor ID, capability bitmaps and properties.
+	 * @return {@link Type#STICK} for 3D mice, {@link Type#GAMEPAD} for gamepads, or null if the device should be skipped
+	 */
+	static Type getType(String name, String vendor, String key, String abs, String rel, String properties) {
+		// Motion sensors report continuously, e.g. the accelerometer some gamepads expose as a separate device
+		if (hasBit(properties, INPUT_PROP_ACCELEROMETER))
+			return null;
+		boolean is3Dconnexion = VENDOR_3DCONNEXION.equals(vendor) ||
+				(VENDOR_LOGITECH.equals(vendor) && name.toLowerCase().contains("3dconnexion"));
+		// Other devices with rotation axes are only treated as 3D mice if they also have buttons,
+		// to avoid picking up sensors (e.g. tablet orientation) that report continuously
+		boolean hasButtons = hasAnyBit(key, EvdevController.BTN_MISC, EvdevController.BTN_MISC + 16);
+		// 3Dconnexion receivers expose several event nodes (e.g. for keyboard buttons); only those with axes are wanted
+		boolean hasAxes = hasAnyBit(abs, 0, N_AXES) || hasAnyBit(rel, 0, N_AXES);
+		if (hasAxes && (is3Dconnexion || (!hasBit(key, EvdevController.BTN_GAMEPAD) && hasButtons && (hasBit(abs, ABS_RX) || hasBit(rel, ABS_RX)))))
+			return Type.STICK;
+		if (hasBit(key, EvdevController.BTN_GAMEPAD))
+			return Type.GAMEPAD;
+		return null;
+	}
+
+	private static String readString(Path path) {
+		try {
+			return Files.readString(path).strip();
+		} catch (IOException e) {
+			return "";
+		}
+	}
+
+	/**
+	 * Check a capability bitmap from sysfs, written as space-separated hex words with the most significant first.
+	 * @param capabilities
+	 * @param bit
+	 * @return
+	 */
+	static boolean hasBit(String capabilities, int bit) {
+		if (capabilities.isBlank())
+			return false;
+		String[] words = capabilities.split(" ");
+		int bitsPerWord = "32".equals(System.getProperty("sun.arch.data.model")) ? 32 : 64;
+		int wordIndex = words.length - 1 - bit / bitsPerWord;
+		if (wordIndex < 0)
+			return false;
+		return new BigInteger(words[wordIndex], 16).testBit(bit % bitsPerWord);
+	}
+
+	/**
+	 * Check whether any bit in a range is set in a capability bitmap.
+	 * @param capabilities
+	 * @param from first bit (inclusive)
+	 * @param to last bit (exclusive)
+	 * @return
+	 * @see #hasBit(String, int)
+	 */
+	static boolean hasAnyBit(String capabilities, int from, int to) {
+		for (int bit = from; bit < to; bit++) {
+			if (hasBit(capabilities, bit))
+				return true;
+		}
+		return false;
+	}
+
+}
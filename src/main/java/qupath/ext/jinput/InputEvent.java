@@ -0,0 +1,128 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+import net.java.games.input.Component;
+import net.java.games.input.Controller;
+
+/**
+ * The state of a controller after one poll.
+ * <p>
+ * Events are preallocated slots in an {@link InputEventBus} and are reused once the bus wraps around.
+ * They should therefore only be read inside a listener callback; copy any values that need to be kept.
+ */
+public class InputEvent {
+
+	/**
+	 * Maximum number of component values stored per event.
+	 */
+	public static final int MAX_COMPONENTS = 64;
+
+	volatile long sequence = -1L;
+	Controller controller;
+	long timestamp;
+	int nComponents;
+	final float[] values = new float[MAX_COMPONENTS];
+
+	InputEvent() {}
+
+	/**
+	 * Fill the event from the last poll of the controller, without polling it again.
+	 */
+	void set(Controller controller, long timestamp) {
+		this.controller = controller;
+		this.timestamp = timestamp;
+		Component[] components = controller.getComponents();
+		nComponents = Math.min(components.length, MAX_COMPONENTS);
+		for (int i = 0; i < nComponents; i++)
+			values[i] = components[i].getPollData();
+	}
+
+	/**
+	 * Copy the contents of another event, apart from the sequence number.
+	 * The caller is responsible for checking that the other event wasn't rewritten during the copy.
+	 */
+	void copyFrom(InputEvent other) {
+		controller = other.controller;
+		timestamp = other.timestamp;
+		// Guard against a torn component count, which could otherwise be out of bounds
+		int n = Math.max(0, Math.min(other.nComponents, MAX_COMPONENTS));
+		System.arraycopy(other.values, 0, values, 0, n);
+		nComponents = n;
+	}
+
+	/**
+	 * Get the sequence number of the event, which increases by one for every event published to the bus.
+	 * @return
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Get the controller that was polled.
+	 * @return
+	 */
+	public Controller getController() {
+		return controller;
+	}
+
+	/**
+	 * Get the time at which the controller was polled, from {@link System#nanoTime()}.
+	 * @return
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Get the number of component values in this event.
+	 * @return
+	 */
+	public int getComponentCount() {
+		return nComponents;
+	}
+
+	/**
+	 * Get the polled value of a component, in the order given by {@link Controller#getComponents()}.
+	 * @param index
+	 * @return
+	 */
+	public float getValue(int index) {
+		return values[index];
+	}
+
+	/**
+	 * Get the polled value of a component by its identifier name (e.g. "x", "rz" or "0").
+	 * @param identifier
+	 * @return the value, or NaN if the controller has no such component
+	 */
+	public float getValue(String identifier) {
+		Component[] components = controller.getComponents();
+		for (int i = 0; i < nComponents; i++) {
+			if (identifier.equals(components[i].getIdentifier().toString()))
+				return values[i];
+		}
+		return Float.NaN;
+	}
+
+}
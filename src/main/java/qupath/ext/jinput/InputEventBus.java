@@ -0,0 +1,199 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.java.games.input.Controller;
+
+/**
+ * Ring buffer that publishes the state of each controller once per poll, to any number of consumers.
+ * <p>
+ * Events are stored in a fixed number of preallocated slots, so publishing does not allocate and memory is bounded.
+ * There are two ways to consume events:
+ * <ul>
+ *   <li>{@link #addListener(InputEventListener)} is called synchronously for every event, on the thread that
+ *   polls the controllers (the JavaFX thread). Listeners must return quickly.</li>
+ *   <li>{@link #subscribe()} returns a {@link Subscription} that can be drained whenever the consumer is ready,
+ *   from any thread. The producer never waits for subscriptions: a subscription that falls more than a full ring
+ *   behind skips the events it missed.</li>
+ * </ul>
+ * For example, from a script:
+ * <pre>
+ * qupath.ext.jinput.AdvancedControllerActionFactory.getEventBus().addListener { e -&gt; println e.getValue("x") }
+ * </pre>
+ */
+public class InputEventBus {
+
+	private static final Logger logger = LoggerFactory.getLogger(InputEventBus.class);
+
+	private final InputEvent[] slots;
+	private final int mask;
+
+	private final AtomicLong published = new AtomicLong(-1L);
+
+	private volatile InputEventListener[] listeners = new InputEventListener[0];
+
+	/**
+	 * Create a bus with at least the specified number of slots (rounded up to a power of two).
+	 * @param capacity
+	 */
+	public InputEventBus(int capacity) {
+		int n = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+		slots = new InputEvent[n];
+		for (int i = 0; i < n; i++)
+			slots[i] = new InputEvent();
+		mask = n - 1;
+	}
+
+	/**
+	 * Publish the last polled state of a controller. This must only be called from a single thread.
+	 * @param controller
+	 */
+	void publish(Controller controller) {
+		long sequence = published.get() + 1;
+		InputEvent event = slots[(int)(sequence & mask)];
+		// Mark the slot as invalid while it is being rewritten, and don't let the writes move before that
+		event.sequence = -1L;
+		VarHandle.storeStoreFence();
+		event.set(controller, System.nanoTime());
+		event.sequence = sequence;
+		published.lazySet(sequence);
+
+		for (var listener : listeners) {
+			try {
+				listener.inputEvent(event);
+			} catch (Exception e) {
+				logger.warn("Error in input event listener: " + e.getLocalizedMessage(), e);
+			}
+		}
+	}
+
+	/**
+	 * Get the sequence number of the last published event, or -1 if nothing has been published.
+	 * @return
+	 */
+	public long getPublishedSequence() {
+		return published.get();
+	}
+
+	/**
+	 * Get the number of event slots.
+	 * @return
+	 */
+	public int getCapacity() {
+		return slots.length;
+	}
+
+	/**
+	 * Add a listener to be notified of every event, on the polling thread.
+	 * @param listener
+	 */
+	public synchronized void addListener(InputEventListener listener) {
+		var updated = Arrays.copyOf(listeners, listeners.length + 1);
+		updated[listeners.length] = listener;
+		listeners = updated;
+	}
+
+	/**
+	 * Remove a listener previously added with {@link #addListener(InputEventListener)}.
+	 * @param listener
+	 */
+	public synchronized void removeListener(InputEventListener listener) {
+		listeners = Arrays.stream(listeners).filter(l -> l != listener).toArray(InputEventListener[]::new);
+	}
+
+	/**
+	 * Create a subscription that will receive events published from now on.
+	 * @return
+	 */
+	public Subscription subscribe() {
+		return new Subscription(published.get() + 1);
+	}
+
+	/**
+	 * A consumer's position in the bus.
+	 * Each subscription should only be drained from one thread.
+	 * <p>
+	 * The producer doesn't wait for subscriptions, so a slot may be overwritten while it is being read.
+	 * Each event is therefore copied and its sequence number checked again afterwards (like a sequence lock);
+	 * the handler only receives the copy, and only if it wasn't overwritten.
+	 */
+	public class Subscription {
+
+		private long next;
+		private long missed = 0L;
+		private final InputEvent copy = new InputEvent();
+
+		private Subscription(long next) {
+			this.next = next;
+		}
+
+		/**
+		 * Pass all events published since the last call to the handler, oldest first.
+		 * The event passed to the handler is reused for every call, and is only valid for the duration of the call.
+		 * @param handler
+		 * @return the number of events handled
+		 */
+		public int poll(InputEventListener handler) {
+			long last = published.get();
+			if (last - next >= slots.length) {
+				long start = last - slots.length + 1;
+				missed += start - next;
+				next = start;
+			}
+			int count = 0;
+			while (next <= last) {
+				InputEvent event = slots[(int)(next & mask)];
+				// The producer may have lapped us while we were handling earlier events, or while copying this one
+				if (event.sequence == next) {
+					copy.copyFrom(event);
+					VarHandle.loadLoadFence();
+					if (event.sequence == next) {
+						copy.sequence = next;
+						handler.inputEvent(copy);
+						count++;
+					} else
+						missed++;
+				} else
+					missed++;
+				next++;
+			}
+			return count;
+		}
+
+		/**
+		 * Get the number of events that were overwritten before this subscription could read them.
+		 * @return
+		 */
+		public long getMissedCount() {
+			return missed;
+		}
+
+	}
+
+}
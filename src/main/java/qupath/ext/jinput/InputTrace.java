@@ -0,0 +1,216 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javafx.application.Platform;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import qupath.ext.jinput.ControllerProfile.AxisRole;
+
+/**
+ * Ring buffer recording, for each heartbeat of each controller, the axis role values and buttons that were read and
+ * how the viewer changed as a result.
+ * <p>
+ * Records are stored in preallocated primitive arrays, so recording doesn't allocate. When tracing is off, the only
+ * cost is checking a flag.
+ * The buffer keeps the most recent {@link #CAPACITY} records, and can be written to a CSV file at any time.
+ * <p>
+ * Tracing can be switched on from the extension menu or from a script, for example:
+ * <pre>
+ * qupath.ext.jinput.InputTrace.setEnabled(true)
+ * // ... reproduce the problem ...
+ * qupath.ext.jinput.InputTrace.write("/path/to/trace.csv")
+ * </pre>
+ */
+public class InputTrace {
+
+	private static final Logger logger = LoggerFactory.getLogger(InputTrace.class);
+
+	/**
+	 * Number of records kept - about 3 minutes for one controller at the default heartbeat.
+	 */
+	static final int CAPACITY = 10_000;
+
+	private static final int N_ROLES = AxisRole.values().length;
+
+	// Viewer state after each heartbeat, followed by the change during it
+	private static final String[] VIEWER_COLUMNS = {
+			"x", "y", "downsample", "rotation", "z", "t", "dx", "dy", "dDownsample", "dRotation"
+	};
+	private static final int N_VIEWER = VIEWER_COLUMNS.length;
+
+	private static final BooleanProperty enabledProperty = new SimpleBooleanProperty(false);
+	private static volatile boolean enabled = false;
+
+	static {
+		enabledProperty.addListener((v, o, n) -> {
+			enabled = n;
+			logger.info("Controller input trace {}", n ? "on" : "off");
+		});
+	}
+
+	private static final long[] timestamps = new long[CAPACITY];
+	private static final int[] controllers = new int[CAPACITY];
+	private static final long[] buttons = new long[CAPACITY];
+	private static final double[] roles = new double[CAPACITY * N_ROLES];
+	private static final double[] viewer = new double[CAPACITY * N_VIEWER];
+
+	private static final List<String> controllerNames = new ArrayList<>();
+
+	// Total number of records written; the next record goes at count % CAPACITY
+	private static long count = 0L;
+
+	private InputTrace() {}
+
+	/**
+	 * Property used to switch tracing on and off. This should only be changed on the JavaFX thread.
+	 * @return
+	 */
+	static BooleanProperty enabledProperty() {
+		return enabledProperty;
+	}
+
+	/**
+	 * Query whether tracing is on. This is cheap enough to call on every heartbeat.
+	 * @return
+	 */
+	static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Switch tracing on or off.
+	 * @param enabled
+	 */
+	public static void setEnabled(boolean enabled) {
+		if (Platform.isFxApplicationThread())
+			enabledProperty.set(enabled);
+		else
+			Platform.runLater(() -> enabledProperty.set(enabled));
+	}
+
+	/**
+	 * Get an ID for a controller, used to identify its records.
+	 * @param name
+	 * @return
+	 */
+	static synchronized int getControllerId(String name) {
+		int ind = controllerNames.indexOf(name);
+		if (ind >= 0)
+			return ind;
+		controllerNames.add(name);
+		return controllerNames.size() - 1;
+	}
+
+	/**
+	 * Add a record. This should only be called on the JavaFX thread, and only when tracing is enabled.
+	 * @param controller controller ID from {@link #getControllerId(String)}
+	 * @param roleValues value for each {@link AxisRole}, by ordinal
+	 * @param buttonMask buttons held down
+	 * @param before viewer centre x, centre y, downsample and rotation before the heartbeat
+	 * @param after viewer centre x, centre y, downsample, rotation, z and t after the heartbeat
+	 */
+	static synchronized void record(int controller, double[] roleValues, long buttonMask, double[] before, double[] after) {
+		int ind = (int)(count % CAPACITY);
+		timestamps[ind] = System.nanoTime();
+		controllers[ind] = controller;
+		buttons[ind] = buttonMask;
+		System.arraycopy(roleValues, 0, roles, ind * N_ROLES, N_ROLES);
+		int offset = ind * N_VIEWER;
+		System.arraycopy(after, 0, viewer, offset, 6);
+		for (int i = 0; i < 4; i++)
+			viewer[offset + 6 + i] = after[i] - before[i];
+		count++;
+	}
+
+	/**
+	 * Discard all records.
+	 */
+	public static synchronized void clear() {
+		count = 0L;
+	}
+
+	/**
+	 * Write the records currently in the buffer to a CSV file, oldest first.
+	 * @param path
+	 * @return the number of records written
+	 * @throws IOException
+	 */
+	public static int write(String path) throws IOException {
+		// Copy under the lock, so that recording isn't blocked by the file writing
+		long[] t, b;
+		int[] c;
+		double[] r, v;
+		String[] names;
+		long first, n;
+		synchronized (InputTrace.class) {
+			t = timestamps.clone();
+			b = buttons.clone();
+			c = controllers.clone();
+			r = roles.clone();
+			v = viewer.clone();
+			names = controllerNames.toArray(String[]::new);
+			n = Math.min(count, CAPACITY);
+			first = count - n;
+		}
+		try (var writer = new PrintWriter(Files.newBufferedWriter(Path.of(path)))) {
+			writer.print("time_ms,controller,buttons");
+			for (var role : AxisRole.values())
+				writer.print("," + role.name().toLowerCase(Locale.ROOT));
+			for (var column : VIEWER_COLUMNS)
+				writer.print("," + column);
+			writer.println();
+			long startTime = n == 0 ? 0 : t[(int)(first % CAPACITY)];
+			for (long i = first; i < first + n; i++) {
+				int ind = (int)(i % CAPACITY);
+				writer.printf(Locale.ROOT, "%.3f,\"%s\",%s", (t[ind] - startTime) / 1e6, names[c[ind]], Long.toBinaryString(b[ind]));
+				for (int k = 0; k < N_ROLES; k++)
+					writer.printf(Locale.ROOT, ",%.4f", r[ind * N_ROLES + k]);
+				for (int k = 0; k < N_VIEWER; k++)
+					writer.printf(Locale.ROOT, ",%.4f", v[ind * N_VIEWER + k]);
+				writer.println();
+			}
+		}
+		logger.info("Wrote {} controller trace records to {}", n, path);
+		return (int)n;
+	}
+
+	/**
+	 * Get a default location for the trace, in the user's home directory.
+	 * @return
+	 */
+	static Path getDefaultPath() {
+		return Path.of(System.getProperty("user.home"), "qupath-controller-trace.csv");
+	}
+
+}
@@ -0,0 +1,143 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size histogram of durations, with log-scaled buckets from 1 nanosecond to about 18 minutes.
+ * <p>
+ * Each power of two is split into {@link #SUB_BUCKETS} linear buckets, so a duration is placed in a bucket no more
+ * than 1/16 (6.25%) wider than itself. This tells apart sub-microsecond {@code poll()} calls as well as
+ * multi-millisecond ticks, in a few kilobytes.
+ * <p>
+ * Recording doesn't allocate, so it can be used inside the input loop. It is not thread-safe.
+ */
+class LatencyHistogram {
+
+	/**
+	 * Number of buckets per power of two.
+	 */
+	static final int SUB_BUCKETS = 16;
+	private static final int SUB_BITS = 4;
+
+	// Largest power of two covered by the buckets (2^40 ns is about 18 minutes)
+	private static final int MAX_EXPONENT = 40;
+	private static final int N_BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+
+	private final long[] counts = new long[N_BUCKETS];
+	private long total = 0L;
+	private long sumNanos = 0L;
+	private long maxNanos = 0L;
+
+	/**
+	 * Record a duration.
+	 * @param nanos
+	 */
+	void record(long nanos) {
+		counts[getBucket(nanos)]++;
+		total++;
+		sumNanos += nanos;
+		if (nanos > maxNanos)
+			maxNanos = nanos;
+	}
+
+	/**
+	 * Get the bucket for a duration: values below {@link #SUB_BUCKETS} have a bucket each, and larger values
+	 * are bucketed by their highest {@code SUB_BITS + 1} bits.
+	 */
+	static int getBucket(long nanos) {
+		if (nanos < SUB_BUCKETS)
+			return (int)Math.max(0L, nanos);
+		int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BITS;
+		int bucket = (shift + 1) * SUB_BUCKETS + (int)(nanos >> shift) - SUB_BUCKETS;
+		return Math.min(bucket, N_BUCKETS - 1);
+	}
+
+	/**
+	 * Get the exclusive upper bound of a bucket.
+	 */
+	static long getBucketUpperNanos(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket + 1;
+		int shift = bucket / SUB_BUCKETS - 1;
+		long mantissa = SUB_BUCKETS + bucket % SUB_BUCKETS;
+		return (mantissa + 1) << shift;
+	}
+
+	long getCount() {
+		return total;
+	}
+
+	double getMeanMillis() {
+		return total == 0 ? Double.NaN : sumNanos / 1e6 / total;
+	}
+
+	double getMaxMillis() {
+		return maxNanos / 1e6;
+	}
+
+	/**
+	 * Get the upper bound of the bucket containing the given percentile, limited to the maximum recorded duration.
+	 * @param percentile between 0 and 100
+	 * @return the duration in milliseconds, or NaN if nothing has been recorded
+	 */
+	double getPercentileMillis(double percentile) {
+		if (total == 0)
+			return Double.NaN;
+		long target = (long)Math.ceil(total * percentile / 100.0);
+		long cumulative = 0;
+		for (int i = 0; i < N_BUCKETS; i++) {
+			cumulative += counts[i];
+			if (cumulative >= target)
+				return Math.min(getBucketUpperNanos(i), maxNanos) / 1e6;
+		}
+		return getMaxMillis();
+	}
+
+	/**
+	 * Summarise as a single line, e.g. for a report.
+	 * @return
+	 */
+	String summarize() {
+		return String.format("n=%d, mean=%s, p50=%s, p90=%s, p99=%s, p99.9=%s, max=%s",
+				total, format(getMeanMillis()), format(getPercentileMillis(50)), format(getPercentileMillis(90)),
+				format(getPercentileMillis(99)), format(getPercentileMillis(99.9)), format(getMaxMillis()));
+	}
+
+	/**
+	 * Format a duration in microseconds if it is below a millisecond, so that short durations aren't rounded to 0.
+	 */
+	static String format(double millis) {
+		if (millis < 1.0)
+			return String.format("%.2f \u00B5s", millis * 1000.0);
+		return String.format("%.2f ms", millis);
+	}
+
+	void reset() {
+		Arrays.fill(counts, 0L);
+		total = 0L;
+		sumNanos = 0L;
+		maxNanos = 0L;
+	}
+
+}
@@ -0,0 +1,158 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javafx.application.Platform;
+import qupath.lib.common.ThreadTools;
+import qupath.lib.gui.viewer.OverlayOptions;
+import qupath.lib.gui.viewer.QuPathViewer;
+import qupath.lib.gui.viewer.overlays.AbstractOverlay;
+import qupath.lib.images.ImageData;
+import qupath.lib.regions.ImageRegion;
+
+/**
+ * Overlay showing a small overview of the whole image, with the viewer's current field of view marked on it.
+ * <p>
+ * The overview is made once per image on a background thread, from the viewer's thumbnail and current display
+ * settings, and scaled to its final size there.
+ * Painting it is then a single unscaled image copy plus the outline of the field of view, so it stays cheap even
+ * while the viewer itself is waiting for tiles.
+ * <p>
+ * The minimap is drawn in the top left corner, because QuPath's own overview uses the top right.
+ */
+class MinimapOverlay extends AbstractOverlay {
+
+	private static final Logger logger = LoggerFactory.getLogger(MinimapOverlay.class);
+
+	private static final ExecutorService pool = Executors.newSingleThreadExecutor(ThreadTools.createThreadFactory("controller-minimap-", true));
+
+	/**
+	 * Maximum width or height of the minimap, in screen pixels.
+	 */
+	static final int MAX_SIZE = 200;
+
+	private static final int MARGIN = 10;
+
+	private static final int MAX_CACHED_IMAGES = 10;
+
+	// Minimaps for recently-viewed images, keyed by server path
+	private static final Map<String, BufferedImage> cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, BufferedImage> eldest) {
+			return size() > MAX_CACHED_IMAGES;
+		}
+	});
+
+	private static final Set<String> pending = Collections.synchronizedSet(new HashSet<>());
+
+	private static final Color BACKGROUND = new Color(0, 0, 0, 160);
+	private static final Stroke VIEWPORT_STROKE = new BasicStroke(1.5f);
+
+	private final QuPathViewer viewer;
+	private final AffineTransform minimapTransform = new AffineTransform();
+
+	MinimapOverlay(QuPathViewer viewer, OverlayOptions options) {
+		super(options);
+		this.viewer = viewer;
+	}
+
+	@Override
+	public void paintOverlay(Graphics2D g2d, ImageRegion imageRegion, double downsampleFactor, ImageData<BufferedImage> imageData, boolean paintCompletely) {
+		if (imageData == null)
+			return;
+		var server = imageData.getServer();
+		var img = cache.get(server.getPath());
+		if (img == null) {
+			requestMinimap();
+			return;
+		}
+
+		// Draw in screen coordinates, in the top left corner
+		AffineTransform transform = g2d.getTransform();
+		g2d.setTransform(new AffineTransform());
+		int w = img.getWidth(), h = img.getHeight();
+		int x = MARGIN;
+		int y = MARGIN;
+		g2d.setColor(BACKGROUND);
+		g2d.fillRect(x - 2, y - 2, w + 4, h + 4);
+		g2d.drawImage(img, x, y, null);
+
+		// Field of view, taken from the viewer in image coordinates (so already allowing for rotation)
+		double scale = (double)w / server.getWidth();
+		minimapTransform.setToTranslation(x, y);
+		minimapTransform.scale(scale, scale);
+		var viewport = minimapTransform.createTransformedShape(viewer.getDisplayedRegionShape());
+		g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g2d.setStroke(VIEWPORT_STROKE);
+		g2d.setColor(Color.YELLOW);
+		g2d.draw(viewport);
+		g2d.setTransform(transform);
+	}
+
+	private void requestMinimap() {
+		var server = viewer.getServer();
+		var display = viewer.getImageDisplay();
+		var store = viewer.getImageRegionStore();
+		if (server == null || display == null || !pending.add(server.getPath()))
+			return;
+		int z = viewer.getZPosition(), t = viewer.getTPosition();
+		pool.execute(() -> {
+			try {
+				var thumbnail = store.getThumbnail(server, z, t, true);
+				var rgb = display.applyTransforms(thumbnail, null);
+				double scale = Math.min(1.0, (double)MAX_SIZE / Math.max(server.getWidth(), server.getHeight()));
+				int w = Math.max(1, (int)Math.round(server.getWidth() * scale));
+				int h = Math.max(1, (int)Math.round(server.getHeight() * scale));
+				var img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+				var g2d = img.createGraphics();
+				g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+				g2d.drawImage(rgb, 0, 0, w, h, null);
+				g2d.dispose();
+				cache.put(server.getPath(), img);
+				Platform.runLater(viewer::repaint);
+			} catch (Exception e) {
+				logger.warn("Unable to create minimap for " + server.getPath() + ": " + e.getLocalizedMessage(), e);
+			} finally {
+				pending.remove(server.getPath());
+			}
+		});
+	}
+
+}
@@ -0,0 +1,431 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javafx.application.Platform;
+import qupath.lib.common.ThreadTools;
+import qupath.lib.gui.viewer.QuPathViewer;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.hierarchy.PathObjectHierarchy;
+import qupath.lib.objects.hierarchy.events.PathObjectHierarchyEvent;
+import qupath.lib.objects.hierarchy.events.PathObjectHierarchyListener;
+
+/**
+ * Moves the viewer between objects in the hierarchy: the next or previous annotation (in raster order from the
+ * viewer centre), or the nearest detection that hasn't been classified yet.
+ * <p>
+ * Hierarchies can contain hundreds of thousands of detections, so the object centroids are kept in a spatial index
+ * that is built on a background thread and updated from hierarchy events, rather than searched on every button press.
+ * The index holds an entry for every annotation and unclassified detection, so it is only built when navigation is
+ * first requested for an image; that request is carried out once the build is complete.
+ * <p>
+ * Detections that have been jumped to are remembered, so repeated presses work through the unclassified detections
+ * rather than bouncing between the same two. Once all have been visited, they are visited again.
+ */
+class ObjectNavigator implements PathObjectHierarchyListener {
+
+	private static final Logger logger = LoggerFactory.getLogger(ObjectNavigator.class);
+
+	/**
+	 * Width and height of each grid cell in the detection index, in full-resolution pixels.
+	 */
+	static final double CELL_SIZE = 512;
+
+	private static final ExecutorService pool = Executors.newSingleThreadExecutor(ThreadTools.createThreadFactory("controller-object-index-", true));
+
+	private static ObjectNavigator instance;
+
+	private volatile PathObjectHierarchy hierarchy;
+	private volatile Index index = new Index();
+	// Navigation requested before the index was ready
+	private volatile Runnable pending;
+
+	private ObjectNavigator() {}
+
+	/**
+	 * Get the navigator shared by all controllers.
+	 * @return
+	 */
+	static synchronized ObjectNavigator getInstance() {
+		if (instance == null)
+			instance = new ObjectNavigator();
+		return instance;
+	}
+
+	/**
+	 * Centre the viewer on the next annotation after the current centre, wrapping around at the end.
+	 * @param viewer
+	 * @param forward true for the next annotation, false for the previous one
+	 * @return true if the viewer was moved
+	 */
+	boolean moveToAnnotation(QuPathViewer viewer, boolean forward) {
+		if (!isReady(viewer, () -> moveToAnnotation(viewer, forward)))
+			return false;
+		Entry entry = index.nextAnnotation(viewer.getCenterPixelX(), viewer.getCenterPixelY(), forward);
+		return moveTo(viewer, entry);
+	}
+
+	/**
+	 * Centre the viewer on the nearest unclassified detection that hasn't been visited yet, other than the one
+	 * currently selected.
+	 * @param viewer
+	 * @return true if the viewer was moved
+	 */
+	boolean moveToNearestUnclassifiedDetection(QuPathViewer viewer) {
+		if (!isReady(viewer, () -> moveToNearestUnclassifiedDetection(viewer)))
+			return false;
+		var selected = hierarchy == null ? null : hierarchy.getSelectionModel().getSelectedObject();
+		Entry entry = index.nextDetection(viewer.getCenterPixelX(), viewer.getCenterPixelY(), selected);
+		return moveTo(viewer, entry);
+	}
+
+	/**
+	 * Make sure the viewer's hierarchy is indexed, and if the index isn't ready yet, keep the request to run when it is.
+	 */
+	private boolean isReady(QuPathViewer viewer, Runnable request) {
+		ensureIndexed(viewer);
+		if (index.ready)
+			return true;
+		pending = request;
+		return false;
+	}
+
+	private boolean moveTo(QuPathViewer viewer, Entry entry) {
+		if (entry == null)
+			return false;
+		viewer.setCenterPixelLocation(entry.x, entry.y);
+		var h = hierarchy;
+		if (h != null)
+			h.getSelectionModel().setSelectedObject(entry.pathObject);
+		return true;
+	}
+
+	/**
+	 * Make sure we are indexing the hierarchy currently shown in the viewer.
+	 * @param viewer
+	 */
+	void ensureIndexed(QuPathViewer viewer) {
+		var current = viewer.getHierarchy();
+		if (current == hierarchy)
+			return;
+		discardIndex();
+		hierarchy = current;
+		if (current != null) {
+			current.addListener(this);
+			rebuild(current);
+		}
+	}
+
+	/**
+	 * Discard the index if the viewer is no longer showing the indexed hierarchy, without building a new one.
+	 * This is cheap enough to call on every heartbeat, and stops the index holding on to images that have been closed.
+	 * @param viewer
+	 */
+	void discardIfStale(QuPathViewer viewer) {
+		if (hierarchy != null && viewer.getHierarchy() != hierarchy)
+			discardIndex();
+	}
+
+	private void discardIndex() {
+		if (hierarchy != null)
+			hierarchy.removeListener(this);
+		hierarchy = null;
+		index = new Index();
+		pending = null;
+	}
+
+	private void rebuild(PathObjectHierarchy h) {
+		var previous = index;
+		pool.execute(() -> {
+			long start = System.currentTimeMillis();
+			var built = Index.build(h);
+			if (hierarchy == h) {
+				// Keep track of what has been visited if the structure changed
+				synchronized (previous) {
+					built.visited.addAll(previous.visited);
+				}
+				index = built;
+				logger.debug("Indexed {} annotations and {} unclassified detections in {} ms",
+						built.annotationEntries.size(), built.detectionEntries.size(), System.currentTimeMillis() - start);
+				var request = pending;
+				pending = null;
+				if (request != null)
+					Platform.runLater(request);
+			}
+		});
+	}
+
+	@Override
+	public void hierarchyChanged(PathObjectHierarchyEvent event) {
+		if (event.isChanging() || event.getHierarchy() != hierarchy)
+			return;
+		switch (event.getEventType()) {
+		case ADDED:
+			// Collect descendants now, while the structure matches the event
+			var added = withDescendants(event.getChangedObjects());
+			pool.execute(() -> index.addAll(added));
+			break;
+		case REMOVED:
+			var removed = withDescendants(event.getChangedObjects());
+			var root = event.getHierarchy().getRootObject();
+			pool.execute(() -> index.removeDetached(removed, root));
+			break;
+		case CHANGE_CLASSIFICATION:
+			var changed = new ArrayList<>(event.getChangedObjects());
+			pool.execute(() -> index.addAll(changed));
+			break;
+		case OTHER_STRUCTURE_CHANGE:
+			rebuild(event.getHierarchy());
+			break;
+		default:
+			break;
+		}
+	}
+
+	private static List<PathObject> withDescendants(Collection<PathObject> pathObjects) {
+		List<PathObject> list = new ArrayList<>();
+		for (var pathObject : pathObjects) {
+			list.add(pathObject);
+			pathObject.getDescendantObjects(list);
+		}
+		return list;
+	}
+
+
+	private static class Entry {
+
+		private final double x, y;
+		private final long id;
+		private final PathObject pathObject;
+
+		private Entry(double x, double y, long id, PathObject pathObject) {
+			this.x = x;
+			this.y = y;
+			this.id = id;
+			this.pathObject = pathObject;
+		}
+
+	}
+
+
+	/**
+	 * Annotations sorted in raster order, plus a uniform grid of unclassified detections.
+	 * All access is synchronized; queries touch only a handful of entries.
+	 */
+	private static class Index {
+
+		private static final Comparator<Entry> RASTER_ORDER = Comparator
+				.comparingDouble((Entry e) -> e.y)
+				.thenComparingDouble(e -> e.x)
+				.thenComparingLong(e -> e.id);
+
+		private long nextId = 0;
+
+		// False for the placeholder used while the index is being built
+		private volatile boolean ready = false;
+
+		private final TreeSet<Entry> annotations = new TreeSet<>(RASTER_ORDER);
+		private final Map<PathObject, Entry> annotationEntries = new HashMap<>();
+
+		private final Map<Long, List<Entry>> cells = new HashMap<>();
+		private final Map<PathObject, Entry> detectionEntries = new HashMap<>();
+		// Detections already jumped to
+		private final Set<PathObject> visited = new HashSet<>();
+		private int minCellX = Integer.MAX_VALUE, minCellY = Integer.MAX_VALUE;
+		private int maxCellX = Integer.MIN_VALUE, maxCellY = Integer.MIN_VALUE;
+
+		static Index build(PathObjectHierarchy hierarchy) {
+			var index = new Index();
+			index.addAll(hierarchy.getAnnotationObjects());
+			index.addAll(hierarchy.getDetectionObjects());
+			index.ready = true;
+			return index;
+		}
+
+		/**
+		 * Add or update objects - this also handles detections that have been classified or unclassified.
+		 */
+		synchronized void addAll(Collection<PathObject> pathObjects) {
+			for (var pathObject : pathObjects) {
+				var roi = pathObject.getROI();
+				if (roi == null)
+					continue;
+				if (pathObject.isAnnotation()) {
+					removeAnnotation(pathObject);
+					var entry = new Entry(roi.getCentroidX(), roi.getCentroidY(), nextId++, pathObject);
+					annotations.add(entry);
+					annotationEntries.put(pathObject, entry);
+				} else if (pathObject.isDetection()) {
+					removeDetection(pathObject);
+					if (pathObject.getPathClass() == null)
+						addDetection(new Entry(roi.getCentroidX(), roi.getCentroidY(), nextId++, pathObject));
+				}
+			}
+		}
+
+		/**
+		 * Remove objects that are no longer part of the hierarchy (removing an object may keep its descendants).
+		 */
+		synchronized void removeDetached(Collection<PathObject> pathObjects, PathObject root) {
+			for (var pathObject : pathObjects) {
+				if (isDescendant(pathObject, root))
+					continue;
+				removeAnnotation(pathObject);
+				removeDetection(pathObject);
+			}
+		}
+
+		synchronized Entry nextAnnotation(double x, double y, boolean forward) {
+			if (annotations.isEmpty())
+				return null;
+			Entry entry;
+			if (forward) {
+				entry = annotations.higher(new Entry(x, y, Long.MAX_VALUE, null));
+				return entry == null ? annotations.first() : entry;
+			} else {
+				entry = annotations.lower(new Entry(x, y, Long.MIN_VALUE, null));
+				return entry == null ? annotations.last() : entry;
+			}
+		}
+
+		/**
+		 * Find the nearest detection that hasn't been visited, and mark it as visited.
+		 * If every detection has been visited, start again.
+		 */
+		synchronized Entry nextDetection(double x, double y, PathObject exclude) {
+			var entry = nearestDetection(x, y, exclude);
+			if (entry == null && !visited.isEmpty()) {
+				visited.clear();
+				entry = nearestDetection(x, y, exclude);
+			}
+			if (entry != null)
+				visited.add(entry.pathObject);
+			return entry;
+		}
+
+		/**
+		 * Search outwards from the cell containing (x, y) in square rings, stopping once no closer entry is possible.
+		 */
+		private Entry nearestDetection(double x, double y, PathObject exclude) {
+			if (detectionEntries.isEmpty())
+				return null;
+			int cx = cell(x), cy = cell(y);
+			int maxRing = Math.max(
+					Math.max(Math.abs(cx - minCellX), Math.abs(maxCellX - cx)),
+					Math.max(Math.abs(cy - minCellY), Math.abs(maxCellY - cy)));
+			Entry best = null;
+			double bestDist2 = Double.POSITIVE_INFINITY;
+			for (int r = 0; r <= maxRing; r++) {
+				for (int i = cx - r; i <= cx + r; i++) {
+					for (int j = cy - r; j <= cy + r; j++) {
+						// Only visit the perimeter of the ring
+						if (Math.abs(i - cx) != r && Math.abs(j - cy) != r)
+							continue;
+						var list = cells.get(key(i, j));
+						if (list == null)
+							continue;
+						for (var entry : list) {
+							if (entry.pathObject == exclude || visited.contains(entry.pathObject))
+								continue;
+							double dx = entry.x - x, dy = entry.y - y;
+							double dist2 = dx*dx + dy*dy;
+							if (dist2 < bestDist2) {
+								bestDist2 = dist2;
+								best = entry;
+							}
+						}
+					}
+				}
+				// Anything in a further ring is at least r cells away
+				double minNext = r * CELL_SIZE;
+				if (best != null && minNext * minNext >= bestDist2)
+					break;
+			}
+			return best;
+		}
+
+		private void removeAnnotation(PathObject pathObject) {
+			var entry = annotationEntries.remove(pathObject);
+			if (entry != null)
+				annotations.remove(entry);
+		}
+
+		private void addDetection(Entry entry) {
+			int cx = cell(entry.x), cy = cell(entry.y);
+			cells.computeIfAbsent(key(cx, cy), k -> new ArrayList<>()).add(entry);
+			detectionEntries.put(entry.pathObject, entry);
+			minCellX = Math.min(minCellX, cx);
+			minCellY = Math.min(minCellY, cy);
+			maxCellX = Math.max(maxCellX, cx);
+			maxCellY = Math.max(maxCellY, cy);
+		}
+
+		private void removeDetection(PathObject pathObject) {
+			var entry = detectionEntries.remove(pathObject);
+			if (entry == null)
+				return;
+			visited.remove(pathObject);
+			long key = key(cell(entry.x), cell(entry.y));
+			var list = cells.get(key);
+			if (list != null) {
+				list.remove(entry);
+				if (list.isEmpty())
+					cells.remove(key);
+			}
+		}
+
+		private static boolean isDescendant(PathObject pathObject, PathObject root) {
+			var parent = pathObject;
+			while (parent != null) {
+				if (parent == root)
+					return true;
+				parent = parent.getParent();
+			}
+			return false;
+		}
+
+		private static int cell(double value) {
+			return (int)Math.floor(value / CELL_SIZE);
+		}
+
+		private static long key(int cx, int cy) {
+			return ((long)cx << 32) | (cy & 0xFFFFFFFFL);
+		}
+
+	}
+
+}
@@ -0,0 +1,179 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import qupath.lib.gui.viewer.QuPathViewer;
+import qupath.lib.images.servers.ImageServer;
+import qupath.lib.regions.RegionRequest;
+
+/**
+ * Steps the viewer through z-slices and time points from controller input.
+ * <p>
+ * Analog axes are treated as a rate: full deflection moves through {@link #MAX_PLANES_PER_TICK} planes per heartbeat,
+ * smaller deflections accumulate until a whole plane is reached.
+ * Once the viewer has stayed on the same plane for a few heartbeats, the neighbouring planes are prefetched for
+ * the visible region so that the next step does not have to wait for tiles to be decoded.
+ */
+class PlaneNavigator {
+
+	/**
+	 * Planes moved per heartbeat at full deflection.
+	 */
+	static final double MAX_PLANES_PER_TICK = 0.25;
+
+	/**
+	 * Deflections below this are ignored, to avoid drifting through the stack.
+	 */
+	static final double AXIS_THRESHOLD = 0.1;
+
+	/**
+	 * Number of heartbeats without a plane change before prefetching the neighbours.
+	 */
+	static final int DWELL_TICKS = 10;
+
+	private final TilePrefetcher prefetcher = new TilePrefetcher();
+
+	private double zAccumulator = 0;
+	private double tAccumulator = 0;
+
+	private int dwellTicks = 0;
+
+	// Key of the last prefetch, so we don't request the same planes repeatedly
+	private ImageServer<BufferedImage> lastServer;
+	private int lastZ = -1, lastT = -1;
+	private double lastDownsample = Double.NaN;
+	private final Rectangle lastBounds = new Rectangle();
+
+	/**
+	 * Update the viewer from analog axes.
+	 * @param viewer
+	 * @param zAxis value in the range -1 to 1 controlling the z-slice
+	 * @param tAxis value in the range -1 to 1 controlling the time point
+	 * @return true if the viewer plane was changed
+	 */
+	boolean update(QuPathViewer viewer, double zAxis, double tAxis) {
+		int dz = 0, dt = 0;
+		if (Math.abs(zAxis) < AXIS_THRESHOLD)
+			zAccumulator = 0;
+		else {
+			zAccumulator += zAxis * MAX_PLANES_PER_TICK;
+			dz = (int)zAccumulator;
+			zAccumulator -= dz;
+		}
+		if (Math.abs(tAxis) < AXIS_THRESHOLD)
+			tAccumulator = 0;
+		else {
+			tAccumulator += tAxis * MAX_PLANES_PER_TICK;
+			dt = (int)tAccumulator;
+			tAccumulator -= dt;
+		}
+		return step(viewer, dz, dt);
+	}
+
+	/**
+	 * Move the viewer by a fixed number of planes.
+	 * @param viewer
+	 * @param dz change in z-slice
+	 * @param dt change in time point
+	 * @return true if the viewer plane was changed
+	 */
+	boolean step(QuPathViewer viewer, int dz, int dt) {
+		var server = viewer.getServer();
+		if (server == null)
+			return false;
+		boolean changed = false;
+		if (dz != 0 && server.nZSlices() > 1) {
+			int z = clip(viewer.getZPosition() + dz, server.nZSlices());
+			if (z != viewer.getZPosition()) {
+				viewer.setZPosition(z);
+				changed = true;
+			}
+		}
+		if (dt != 0 && server.nTimepoints() > 1) {
+			int t = clip(viewer.getTPosition() + dt, server.nTimepoints());
+			if (t != viewer.getTPosition()) {
+				viewer.setTPosition(t);
+				changed = true;
+			}
+		}
+		if (changed) {
+			dwellTicks = 0;
+			prefetcher.cancel();
+		}
+		return changed;
+	}
+
+	/**
+	 * Called once per heartbeat after any stepping, to prefetch neighbouring planes once the user has settled.
+	 * @param viewer
+	 */
+	void dwell(QuPathViewer viewer) {
+		// Check periodically, so that panning while on the same plane also triggers a new prefetch
+		if (++dwellTicks % DWELL_TICKS != 0)
+			return;
+		var server = viewer.getServer();
+		if (server == null || (server.nZSlices() == 1 && server.nTimepoints() == 1))
+			return;
+
+		int z = viewer.getZPosition();
+		int t = viewer.getTPosition();
+		double downsample = viewer.getDownsampleFactor();
+		Rectangle bounds = viewer.getDisplayedRegionShape().getBounds().intersection(
+				new Rectangle(0, 0, server.getWidth(), server.getHeight()));
+		if (bounds.isEmpty())
+			return;
+		if (server == lastServer && z == lastZ && t == lastT && downsample == lastDownsample && bounds.equals(lastBounds))
+			return;
+		lastServer = server;
+		lastZ = z;
+		lastT = t;
+		lastDownsample = downsample;
+		lastBounds.setBounds(bounds);
+
+		List<RegionRequest> requests = new ArrayList<>();
+		for (int offset = 1; offset <= 2; offset++) {
+			addRequest(requests, server, downsample, bounds, z + offset, t);
+			addRequest(requests, server, downsample, bounds, z - offset, t);
+		}
+		addRequest(requests, server, downsample, bounds, z, t + 1);
+		addRequest(requests, server, downsample, bounds, z, t - 1);
+		if (!requests.isEmpty())
+			prefetcher.prefetch(server, viewer.getImageRegionStore(), requests);
+	}
+
+	private static void addRequest(List<RegionRequest> requests, ImageServer<BufferedImage> server, double downsample, Rectangle bounds, int z, int t) {
+		if (z < 0 || z >= server.nZSlices() || t < 0 || t >= server.nTimepoints())
+			return;
+		requests.add(RegionRequest.createInstance(server.getPath(), downsample,
+				bounds.x, bounds.y, bounds.width, bounds.height, z, t));
+	}
+
+	private static int clip(int value, int n) {
+		return Math.max(0, Math.min(n - 1, value));
+	}
+
+}
@@ -0,0 +1,377 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.java.games.input.Component;
+import net.java.games.input.Controller;
+import qupath.ext.jinput.ControllerProfile.AxisRole;
+import qupath.ext.jinput.ControllerProfile.ButtonAction;
+import qupath.lib.gui.QuPathGUI;
+import qupath.lib.gui.viewer.QuPathViewer;
+
+/**
+ * Advanced input controller for browsing whole slide images, driven by a {@link ControllerProfile}.
+ * <p>
+ * The profile is compiled into arrays indexed by component when the controller is created, so that each heartbeat
+ * only needs to loop over the components once, without comparing names.
+ */
+public class ProfiledController implements QuPathAdvancedController {
+
+	private static final Logger logger = LoggerFactory.getLogger(ProfiledController.class);
+
+	private static final int PAN_X = AxisRole.PAN_X.ordinal();
+	private static final int PAN_Y = AxisRole.PAN_Y.ordinal();
+	private static final int ZOOM = AxisRole.ZOOM.ordinal();
+	private static final int ROTATE = AxisRole.ROTATE.ordinal();
+	private static final int PLANE_Z = AxisRole.PLANE_Z.ordinal();
+	private static final int PLANE_T = AxisRole.PLANE_T.ordinal();
+
+	private final Controller controller;
+	private final QuPathGUI qupath;
+	private final ControllerProfile profile;
+	private final Component[] components;
+
+	// Compiled profile, indexed by component
+	private final int[] axisRole;
+	private final double[] axisScale;
+	private final double[] axisOffset;
+	private final double[] axisCurve;
+	private final ButtonAction[] buttonAction;
+
+	private final double heartbeatSeconds;
+	private QuPathViewer geometryViewer;
+	private ViewerGeometry geometry;
+
+	// Role values for this heartbeat & the last one
+	private final double[] values = new double[AxisRole.values().length];
+	private final double[] previous = new double[AxisRole.values().length];
+
+	private final PlaneNavigator planeNavigator = new PlaneNavigator();
+	private final DisplayRangeAdjuster displayAdjuster = new DisplayRangeAdjuster();
+	private final ObjectNavigator objectNavigator = ObjectNavigator.getInstance();
+	private final SlideTour slideTour = new SlideTour();
+	private final BrushTool brushTool = BrushTool.getInstance();
+	private final ViewBookmarks bookmarks = ViewBookmarks.getInstance();
+	private final RotationController rotation = new RotationController();
+	private final ControllerButtons buttons = new ControllerButtons();
+	private final TileRetention tileRetention = TileRetention.getInstance();
+
+	// Trace ID & reusable viewer states, so tracing doesn't allocate
+	private final int traceId;
+	private final double[] traceBefore = new double[4];
+	private final double[] traceAfter = new double[6];
+
+	// If true, the plane axes adjust the display range rather than the z-slice and time point
+	private boolean adjustDisplay = false;
+
+	/**
+	 * Create a controller using the profile that best matches the device.
+	 * @param controller
+	 * @param qupath the QuPath instance, or null to poll the controller without updating a viewer
+	 * @param heartbeat time between updates, in milliseconds
+	 */
+	public ProfiledController(final Controller controller, final QuPathGUI qupath, final int heartbeat) {
+		this(controller, qupath, heartbeat, ControllerProfile.find(controller));
+	}
+
+	ProfiledController(final Controller controller, final QuPathGUI qupath, final int heartbeat, final ControllerProfile profile) {
+		this.controller = controller;
+		this.qupath = qupath;
+		this.profile = profile;
+		this.heartbeatSeconds = heartbeat / 1000.0;
+		this.components = controller.getComponents();
+		this.traceId = InputTrace.getControllerId(controller.getName());
+
+		int n = components.length;
+		axisRole = new int[n];
+		axisScale = new double[n];
+		axisOffset = new double[n];
+		axisCurve = new double[n];
+		buttonAction = new ButtonAction[n];
+		Arrays.fill(axisRole, -1);
+		for (int i = 0; i < n; i++) {
+			String name = components[i].getIdentifier().toString();
+			for (var axis : profile.axes) {
+				if (name.equals(axis.component) && axis.role != null) {
+					if (axisRole[i] >= 0)
+						logger.warn("Axis {} is mapped more than once in profile {} - using the first mapping", name, profile);
+					else {
+						axisRole[i] = axis.role.ordinal();
+						axisScale[i] = axis.scale;
+						axisOffset[i] = axis.offset;
+						axisCurve[i] = axis.curve;
+					}
+				}
+			}
+			var action = profile.buttons.get(name);
+			if (action != null) {
+				if (i < 64)
+					buttonAction[i] = action;
+				else
+					logger.warn("Unable to map {} to {} - only the first 64 components can be used as buttons", name, action);
+			}
+		}
+
+		logger.info("Using profile {} for {}", profile, controller.getName());
+	}
+
+	@Override
+	public String getControllerName() {
+		return controller.getName();
+	}
+
+	ControllerProfile getProfile() {
+		return profile;
+	}
+
+	/**
+	 * Try to poll the controller to update the viewer.
+	 * @return true if the update is successful and the controller remains in a valid state, false otherwise.
+	 * If false is returned, then the controller may be stopped.
+	 */
+	@Override
+	public boolean updateViewer() {
+
+		// Check the device
+		if (!controller.poll())
+			return false;
+
+		// Check we have a viewer & server
+		QuPathViewer viewer = qupath == null ? null : qupath.getViewer();
+		if (viewer == null || viewer.getServer() == null)
+			return true;
+
+		if (InputTrace.isEnabled()) {
+			getViewerState(viewer, traceBefore);
+			update(viewer);
+			getViewerState(viewer, traceAfter);
+			traceAfter[4] = viewer.getZPosition();
+			traceAfter[5] = viewer.getTPosition();
+			InputTrace.record(traceId, values, buttons.getPressedMask(), traceBefore, traceAfter);
+		} else
+			update(viewer);
+
+		tileRetention.update(viewer);
+		return true;
+	}
+
+	private static void getViewerState(QuPathViewer viewer, double[] state) {
+		state[0] = viewer.getCenterPixelX();
+		state[1] = viewer.getCenterPixelY();
+		state[2] = viewer.getDownsampleFactor();
+		state[3] = viewer.getRotation();
+	}
+
+	private void update(QuPathViewer viewer) {
+
+		// Don't keep an object index for an image that is no longer shown (it's only built when first needed)
+		objectNavigator.discardIfStale(viewer);
+
+		Arrays.fill(values, 0.0);
+		// Magnification ladder steps
+		int zoom = 0;
+		// Z-slice steps
+		int zStep = 0;
+		// Painting with the brush (the magnification down button paints while the brush is active)
+		boolean paint = false;
+
+		for (int i = 0; i < components.length; i++) {
+			var c = components[i];
+			double polled = c.getPollData();
+			if (Math.abs(polled) < c.getDeadZone())
+				polled = 0;
+
+			int role = axisRole[i];
+			if (role >= 0) {
+				double v = axisCurve[i] == 1.0 ? polled : Math.signum(polled) * Math.pow(Math.abs(polled), axisCurve[i]);
+				values[role] += (v + axisOffset[i]) * axisScale[i];
+			}
+
+			var action = buttonAction[i];
+			if (action == null)
+				continue;
+			boolean pressed = buttons.isNewlyPressed(i, polled);
+			switch (action) {
+			case MAGNIFICATION_DOWN:
+				if (brushTool.isActive())
+					paint = polled != 0;
+				else if (pressed)
+					zoom -= 1;
+				break;
+			case MAGNIFICATION_UP:
+				if (pressed)
+					zoom += 1;
+				break;
+			case TOGGLE_DISPLAY_ADJUSTMENT:
+				if (pressed) {
+					adjustDisplay = !adjustDisplay;
+					displayAdjuster.flush();
+				}
+				break;
+			case NEXT_CHANNEL:
+				if (pressed && adjustDisplay)
+					displayAdjuster.nextChannel(viewer);
+				break;
+			case PREVIOUS_ANNOTATION:
+				if (pressed)
+					objectNavigator.moveToAnnotation(viewer, false);
+				break;
+			case NEXT_ANNOTATION:
+				if (pressed)
+					objectNavigator.moveToAnnotation(viewer, true);
+				break;
+			case NEAREST_UNCLASSIFIED_DETECTION:
+				if (pressed)
+					objectNavigator.moveToNearestUnclassifiedDetection(viewer);
+				break;
+			case TOGGLE_TOUR:
+				if (pressed)
+					slideTour.toggle(viewer);
+				break;
+			case PAUSE_TOUR:
+				if (pressed)
+					slideTour.togglePause();
+				break;
+			case STEP_TOUR:
+				if (pressed)
+					slideTour.step(viewer);
+				break;
+			case TOGGLE_BRUSH:
+				if (pressed)
+					brushTool.activeProperty().set(!brushTool.isActive());
+				break;
+			case BOOKMARK:
+				if (pressed)
+					bookmarks.add(qupath, viewer);
+				break;
+			case PREVIOUS_Z:
+				if (pressed)
+					zStep -= 1;
+				break;
+			case NEXT_Z:
+				if (pressed)
+					zStep += 1;
+				break;
+			}
+		}
+
+		boolean xMoved = isMoved(PAN_X);
+		boolean yMoved = isMoved(PAN_Y);
+		boolean zoomMoved = isMoved(ZOOM);
+		System.arraycopy(values, 0, previous, 0, values.length);
+
+		double dx = values[PAN_X];
+		double dy = values[PAN_Y];
+
+		if (zStep != 0)
+			planeNavigator.step(viewer, zStep, 0);
+		if (adjustDisplay)
+			displayAdjuster.update(viewer, values[PLANE_Z], values[PLANE_T]);
+		else
+			planeNavigator.update(viewer, values[PLANE_Z], values[PLANE_T]);
+		planeNavigator.dwell(viewer);
+
+		// While the brush is active, panning moves the brush cursor rather than the viewer
+		if (brushTool.isActive()) {
+			brushTool.update(this, viewer, dx, dy, paint);
+			return;
+		}
+
+		// While touring, panning left/right sets the tour speed and the viewer isn't otherwise moved
+		if (slideTour.isActive()) {
+			slideTour.update(viewer, dx);
+			return;
+		}
+
+		rotation.update(viewer, values[ROTATE]);
+
+		if (!xMoved && !yMoved && !zoomMoved && zoom == 0)
+			return;
+
+		if (zoom != 0) {
+			double serverMag = viewer.getServer().getMetadata().getMagnification();
+			double magnification = viewer.getMagnification();
+			// Assume x40 if no other info...
+			if (Double.isNaN(serverMag)) {
+				serverMag = 40;
+				magnification = serverMag / viewer.getDownsampleFactor();
+			}
+			double downsample;
+			if (zoom > 0)
+				downsample = serverMag / profile.getHigherMagnification(magnification);
+			else
+				downsample = serverMag / profile.getLowerMagnification(magnification);
+			viewer.setDownsampleFactor(downsample, -1, -1);
+		} else if (zoomMoved && Math.abs(values[ZOOM] * 20) >= 1) {
+			viewer.zoomIn((int)(values[ZOOM] * 20));
+		}
+
+		if (xMoved || yMoved) {
+			double scrollScale = getScrollScale(viewer);
+
+			// Shift as required - correcting for rotation (Pete's code)
+			double sin = rotation.getSin();
+			double cos = rotation.getCos();
+
+			double dx2 = dx * scrollScale;
+			double dy2 = dy * scrollScale;
+
+			double dx3 = cos * dx2 - sin * dy2;
+			double dy3 = sin * dx2 + cos * dy2;
+
+			viewer.setCenterPixelLocation(
+					viewer.getCenterPixelX() + dx3,
+					viewer.getCenterPixelY() + dy3);
+		}
+	}
+
+	private boolean isMoved(int role) {
+		if (profile.panOnChangeOnly)
+			return Math.abs(values[role] - previous[role]) > 1e-5;
+		return Math.abs(values[role]) > profile.moveThreshold;
+	}
+
+	private double getScrollScale(QuPathViewer viewer) {
+		if (viewer != geometryViewer) {
+			geometry = ViewerGeometry.getInstance(viewer);
+			geometryViewer = viewer;
+		}
+		double scrollScale = geometry.getPanScale(profile.panSpeed, heartbeatSeconds);
+		if (profile.invertPan)
+			scrollScale = -scrollScale;
+		// Checking if we need to invert
+		if (!AdvancedControllerExtension.getInvertControllerScrolling())
+			scrollScale = -scrollScale;
+		return scrollScale;
+	}
+
+	@Override
+	public Controller getController() {
+		return controller;
+	}
+
+}
@@ -0,0 +1,262 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javafx.application.Platform;
+import qupath.lib.color.ColorDeconvolutionStains;
+import qupath.lib.common.ThreadTools;
+import qupath.lib.gui.images.stores.ImageRegionStore;
+import qupath.lib.gui.viewer.OverlayOptions;
+import qupath.lib.gui.viewer.QuPathViewer;
+import qupath.lib.gui.viewer.overlays.AbstractOverlay;
+import qupath.lib.images.ImageData;
+import qupath.lib.objects.PathDetectionObject;
+import qupath.lib.regions.ImageRegion;
+import qupath.lib.regions.RegionRequest;
+
+/**
+ * Overlay showing live statistics for the region currently visible in a viewer: the mean value of each channel,
+ * mean stain optical densities for brightfield images, and the number of detections.
+ * <p>
+ * Statistics are only calculated from tiles that are already in the viewer's cache - nothing is read from the server.
+ * Each tile's sums are kept, so when the viewer moves only the newly-visible tiles need to be processed.
+ * The work runs on a background thread and is abandoned as soon as the viewport changes again, so painting never
+ * waits for it.
+ */
+class RegionStatisticsOverlay extends AbstractOverlay {
+
+	private static final ExecutorService pool = Executors.newSingleThreadExecutor(ThreadTools.createThreadFactory("controller-region-stats-", true));
+
+	/**
+	 * Maximum number of tiles whose sums are kept.
+	 */
+	private static final int MAX_CACHED_TILES = 5000;
+
+	private static final Font FONT = new Font(Font.SANS_SERIF, Font.PLAIN, 12);
+
+	private final QuPathViewer viewer;
+
+	private final Map<RegionRequest, TileSums> tileSums = new LinkedHashMap<>(256, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<RegionRequest, TileSums> eldest) {
+			return size() > MAX_CACHED_TILES;
+		}
+	};
+
+	private final AtomicLong generation = new AtomicLong();
+	private final AtomicBoolean running = new AtomicBoolean(false);
+
+	private RegionRequest lastRequest;
+	private volatile Summary summary;
+
+	RegionStatisticsOverlay(QuPathViewer viewer, OverlayOptions options) {
+		super(options);
+		this.viewer = viewer;
+	}
+
+	@Override
+	public void paintOverlay(Graphics2D g2d, ImageRegion imageRegion, double downsampleFactor, ImageData<BufferedImage> imageData, boolean paintCompletely) {
+		if (imageData == null)
+			return;
+		var server = imageData.getServer();
+		var request = RegionRequest.createInstance(server.getPath(), downsampleFactor, imageRegion);
+		var current = summary;
+		// Recalculate if the viewport has changed, or if tiles were missing last time (they may have arrived since)
+		if (!request.equals(lastRequest) || (current != null && current.missingTiles > 0 && !running.get())) {
+			lastRequest = request;
+			schedule(imageData, request);
+		}
+		if (current != null && request.equals(current.request))
+			paintSummary(g2d, current);
+	}
+
+	private void schedule(ImageData<BufferedImage> imageData, RegionRequest request) {
+		long gen = generation.incrementAndGet();
+		var store = viewer.getImageRegionStore();
+		pool.execute(() -> {
+			if (generation.get() != gen)
+				return;
+			running.set(true);
+			try {
+				var result = calculate(imageData, store, request, gen);
+				if (result != null && generation.get() == gen) {
+					var previous = summary;
+					summary = result;
+					// Only repaint if something has changed - otherwise we could keep rescheduling while tiles are missing
+					if (previous == null || !previous.request.equals(result.request) || !previous.lines.equals(result.lines))
+						Platform.runLater(viewer::repaint);
+				}
+			} finally {
+				running.set(false);
+			}
+		});
+	}
+
+	private Summary calculate(ImageData<BufferedImage> imageData, ImageRegionStore<BufferedImage> store, RegionRequest request, long gen) {
+		var server = imageData.getServer();
+		int nChannels = server.nChannels();
+		var stains = imageData.isBrightfield() && server.isRGB() ? imageData.getColorDeconvolutionStains() : null;
+
+		double[] sums = new double[nChannels];
+		double[] odSums = new double[3];
+		long count = 0;
+		int missing = 0;
+		var tiles = server.getTileRequestManager().getTileRequests(request);
+		for (var tile : tiles) {
+			if (generation.get() != gen)
+				return null;
+			var tileRequest = tile.getRegionRequest();
+			TileSums tileResult;
+			synchronized (tileSums) {
+				tileResult = tileSums.get(tileRequest);
+			}
+			if (tileResult == null) {
+				var img = store.getCachedTile(server, tileRequest);
+				if (img == null) {
+					missing++;
+					continue;
+				}
+				tileResult = TileSums.calculate(img, nChannels, stains);
+				synchronized (tileSums) {
+					tileSums.put(tileRequest, tileResult);
+				}
+			}
+			for (int c = 0; c < nChannels; c++)
+				sums[c] += tileResult.sums[c];
+			for (int c = 0; c < 3; c++)
+				odSums[c] += tileResult.odSums[c];
+			count += tileResult.count;
+		}
+
+		var summary = new Summary();
+		summary.request = request;
+		summary.missingTiles = missing;
+		summary.lines.add(String.format("Tiles: %d/%d", tiles.size() - missing, tiles.size()));
+		if (count > 0) {
+			var channels = server.getMetadata().getChannels();
+			for (int c = 0; c < nChannels; c++)
+				summary.lines.add(String.format("%s: %.2f", channels.get(c).getName(), sums[c] / count));
+			if (stains != null) {
+				// Deconvolution is linear in optical density, so we can apply it to the mean
+				double[][] inv = stains.getMatrixInverse();
+				double r = odSums[0] / count, g = odSums[1] / count, b = odSums[2] / count;
+				for (int s = 0; s < 3; s++) {
+					double od = r * inv[0][s] + g * inv[1][s] + b * inv[2][s];
+					summary.lines.add(String.format("%s OD: %.3f", stains.getStain(s + 1).getName(), od));
+				}
+			}
+		}
+		var hierarchy = imageData.getHierarchy();
+		if (hierarchy != null && generation.get() == gen) {
+			int nDetections = hierarchy.getObjectsForRegion(PathDetectionObject.class, request, null).size();
+			summary.lines.add(String.format("Detections: %d", nDetections));
+		}
+		return summary;
+	}
+
+	private void paintSummary(Graphics2D g2d, Summary summary) {
+		// Draw in screen coordinates, so that the box doesn't scale or rotate with the image
+		AffineTransform transform = g2d.getTransform();
+		g2d.setTransform(new AffineTransform());
+		g2d.setFont(FONT);
+		var metrics = g2d.getFontMetrics();
+		int lineHeight = metrics.getHeight();
+		int width = 0;
+		for (var line : summary.lines)
+			width = Math.max(width, metrics.stringWidth(line));
+		int x = 10, y = 10;
+		g2d.setColor(new Color(0, 0, 0, 160));
+		g2d.fillRect(x, y, width + 12, lineHeight * summary.lines.size() + 8);
+		g2d.setColor(Color.WHITE);
+		int baseline = y + 4 + metrics.getAscent();
+		for (var line : summary.lines) {
+			g2d.drawString(line, x + 6, baseline);
+			baseline += lineHeight;
+		}
+		g2d.setTransform(transform);
+	}
+
+
+	private static class Summary {
+
+		private RegionRequest request;
+		private int missingTiles;
+		private final List<String> lines = new ArrayList<>();
+
+	}
+
+
+	/**
+	 * Per-channel sums for one tile, plus the optical density sums for RGB images.
+	 */
+	private static class TileSums {
+
+		private final double[] sums;
+		private final double[] odSums = new double[3];
+		private long count;
+
+		private TileSums(int nChannels) {
+			sums = new double[nChannels];
+		}
+
+		static TileSums calculate(BufferedImage img, int nChannels, ColorDeconvolutionStains stains) {
+			var result = new TileSums(nChannels);
+			var raster = img.getRaster();
+			int w = img.getWidth(), h = img.getHeight();
+			int nBands = Math.min(nChannels, raster.getNumBands());
+			double[] row = new double[w];
+			double[] max = stains == null ? null : new double[] {stains.getMaxRed(), stains.getMaxGreen(), stains.getMaxBlue()};
+			for (int b = 0; b < nBands; b++) {
+				for (int y = 0; y < h; y++) {
+					raster.getSamples(0, y, w, 1, b, row);
+					double sum = 0, odSum = 0;
+					for (int x = 0; x < w; x++) {
+						sum += row[x];
+						if (max != null && b < 3)
+							odSum -= Math.log10(Math.max(row[x], 1.0) / max[b]);
+					}
+					result.sums[b] += sum;
+					if (max != null && b < 3)
+						result.odSums[b] += odSum;
+				}
+			}
+			result.count = (long)w * h;
+			return result;
+		}
+
+	}
+
+}
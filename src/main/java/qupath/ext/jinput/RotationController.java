@@ -0,0 +1,155 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+import qupath.lib.gui.viewer.QuPathViewer;
+
+/**
+ * Rotates the viewer from a controller axis, and caches the values needed to pan in screen directions.
+ * <p>
+ * Axis values inside a dead band are ignored, so noise on a twist axis doesn't rotate the image.
+ * The requested angle accumulates while the axis is held, but is only applied to the viewer when it has changed
+ * by at least {@link #MIN_CHANGE} - or, if a snap angle is set in the preferences, when it is half way to the next
+ * multiple of that angle in the direction of the twist (so snapping never rotates against the twist).
+ * Each rotation re-renders the whole viewer, so this keeps the number of re-renders small.
+ */
+class RotationController {
+
+	/**
+	 * Axis values below this are treated as zero.
+	 */
+	static final double DEAD_BAND = 0.15;
+
+	/**
+	 * Rotation per heartbeat at full deflection, in radians.
+	 */
+	static final double MAX_RADIANS_PER_TICK = Math.toRadians(3);
+
+	/**
+	 * Smallest change in rotation applied to the viewer, in radians.
+	 */
+	static final double MIN_CHANGE = Math.toRadians(0.5);
+
+	// Rotation requested by the controller, before snapping
+	private double target = 0;
+	// Rotation last applied to (or read from) the viewer
+	private double rotation = Double.NaN;
+	private double sin = 0, cos = 1;
+
+	/**
+	 * Update the rotation from an axis value, and make sure the cached values match the viewer.
+	 * @param viewer
+	 * @param dr axis value (-1 to 1)
+	 * @return true if the viewer was rotated
+	 */
+	boolean update(QuPathViewer viewer, double dr) {
+		sync(viewer.getRotation());
+		double angle = step(dr, AdvancedControllerExtension.controllerRotationSnapProperty().get());
+		if (Double.isNaN(angle))
+			return false;
+		viewer.setRotation(angle);
+		// The viewer may normalise the angle, so keep whatever it reports
+		applied(angle, viewer.getRotation());
+		return true;
+	}
+
+	/**
+	 * Pick up changes made by anything else (e.g. the slide tour, or the mouse).
+	 * @param current the viewer's rotation
+	 */
+	void sync(double current) {
+		if (current != rotation) {
+			target = current;
+			setRotation(current);
+		}
+	}
+
+	/**
+	 * Accumulate an axis value into the requested rotation, and get the angle that should be applied.
+	 * @param dr axis value (-1 to 1)
+	 * @param snapDegrees angle to snap to, or 0 for continuous rotation
+	 * @return the angle to apply, or NaN if the rotation shouldn't change yet
+	 */
+	double step(double dr, double snapDegrees) {
+		if (Math.abs(dr) < DEAD_BAND)
+			return Double.NaN;
+
+		// Scale from the edge of the dead band, so that rotation starts slowly
+		double speed = (Math.abs(dr) - DEAD_BAND) / (1 - DEAD_BAND);
+		target += Math.signum(dr) * speed * MAX_RADIANS_PER_TICK;
+
+		double angle;
+		if (snapDegrees > 0) {
+			double snap = Math.toRadians(snapDegrees);
+			double sign = Math.signum(dr);
+			// Next multiple beyond the current rotation in the direction of the twist - even if the current rotation
+			// is closer to the multiple behind it
+			angle = sign > 0 ? Math.ceil(rotation / snap + 1e-9) * snap : Math.floor(rotation / snap - 1e-9) * snap;
+			if ((target - rotation) * sign < (angle - rotation) * sign / 2)
+				return Double.NaN;
+			// Continue from the snapped angle, so every snap needs the same amount of twist
+			target = angle;
+		} else {
+			angle = target;
+			if (angleBetween(angle, rotation) < MIN_CHANGE)
+				return Double.NaN;
+		}
+		return angle;
+	}
+
+	/**
+	 * Record that an angle from {@link #step(double, double)} has been applied.
+	 * @param angle the angle requested
+	 * @param reported the rotation then reported by the viewer, which may have normalised it
+	 */
+	void applied(double angle, double reported) {
+		setRotation(reported);
+		target = rotation + (target - angle);
+	}
+
+	private static double angleBetween(double a, double b) {
+		return Math.abs(Math.IEEEremainder(a - b, 2 * Math.PI));
+	}
+
+	private void setRotation(double rotation) {
+		this.rotation = rotation;
+		sin = Math.sin(-rotation);
+		cos = Math.cos(-rotation);
+	}
+
+	/**
+	 * Get sin(-rotation), for converting a shift in screen directions into image coordinates.
+	 * @return
+	 */
+	double getSin() {
+		return sin;
+	}
+
+	/**
+	 * Get cos(-rotation), for converting a shift in screen directions into image coordinates.
+	 * @return
+	 */
+	double getCos() {
+		return cos;
+	}
+
+}
@@ -0,0 +1,321 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.gui.viewer.QuPathViewer;
+import qupath.lib.images.servers.ImageServer;
+import qupath.lib.objects.PathAnnotationObject;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.hierarchy.PathObjectHierarchy;
+import qupath.lib.regions.ImageRegion;
+import qupath.lib.regions.RegionRequest;
+import qupath.lib.roi.interfaces.ROI;
+
+/**
+ * Automated tour of a region in a serpentine (boustrophedon) pattern, one field of view at a time.
+ * <p>
+ * The region is the selected annotation or, if no annotation is selected, all the area annotations on the current
+ * plane (e.g. from tissue detection). Fields that don't overlap the region are skipped; annotations near each field
+ * are found with a spatial query of the hierarchy.
+ * If there are no annotations the whole image is toured, including any empty background.
+ * Fields are the size of the viewer at the current magnification, with a small overlap.
+ * The tour moves between field centres at a speed set by the stick deflection; negative deflection goes back.
+ * <p>
+ * Because the path is known in advance, the tiles for the next few fields are prefetched as soon as the tour
+ * reaches each field.
+ */
+class SlideTour {
+
+	private static final Logger logger = LoggerFactory.getLogger(SlideTour.class);
+
+	/**
+	 * Fields travelled per heartbeat at full deflection.
+	 */
+	static final double MAX_FIELDS_PER_TICK = 0.05;
+
+	static final double AXIS_THRESHOLD = 0.1;
+
+	/**
+	 * Fraction of each field that overlaps with its neighbours.
+	 */
+	static final double OVERLAP = 0.1;
+
+	/**
+	 * Number of fields ahead to prefetch.
+	 */
+	static final int PREFETCH_FIELDS = 4;
+
+	private final TilePrefetcher prefetcher = new TilePrefetcher();
+
+	// Viewer and image the tour was planned for
+	private QuPathViewer viewer;
+	private ImageServer<?> server;
+
+	private boolean active = false;
+	private boolean paused = false;
+
+	private double[] xs = new double[0];
+	private double[] ys = new double[0];
+	private double fieldWidth, fieldHeight, downsample;
+	private int z, t;
+
+	// Current position, as a field index plus the fraction of the way to the next field
+	private int field = 0;
+	private double progress = 0;
+
+	/**
+	 * Check whether a tour is running. A tour stops when it is next updated if the viewer's image has changed.
+	 * @return
+	 */
+	boolean isActive() {
+		return active;
+	}
+
+	/**
+	 * Start a new tour from the viewer's current magnification, or stop the tour if one is running.
+	 * @param viewer
+	 */
+	void toggle(QuPathViewer viewer) {
+		if (active)
+			stop();
+		else
+			start(viewer);
+	}
+
+	void start(QuPathViewer viewer) {
+		var server = viewer.getServer();
+		if (server == null)
+			return;
+		z = viewer.getZPosition();
+		t = viewer.getTPosition();
+		var imageBounds = new Rectangle(0, 0, server.getWidth(), server.getHeight());
+		var selected = getSelectedRegion(viewer);
+		Rectangle bounds = imageBounds;
+		if (selected != null) {
+			bounds = new Rectangle((int)selected.getBoundsX(), (int)selected.getBoundsY(),
+					(int)Math.ceil(selected.getBoundsWidth()), (int)Math.ceil(selected.getBoundsHeight()))
+					.intersection(imageBounds);
+			if (bounds.isEmpty())
+				return;
+		}
+
+		// Tour fields are aligned with the image axes
+		viewer.setRotation(0);
+		downsample = viewer.getDownsampleFactor();
+		fieldWidth = viewer.getView().getWidth() * downsample;
+		fieldHeight = viewer.getView().getHeight() * downsample;
+		if (fieldWidth <= 0 || fieldHeight <= 0)
+			return;
+
+		double stepX = fieldWidth * (1 - OVERLAP);
+		double stepY = fieldHeight * (1 - OVERLAP);
+		int nx = Math.max(1, (int)Math.ceil((bounds.width - fieldWidth) / stepX) + 1);
+		int ny = Math.max(1, (int)Math.ceil((bounds.height - fieldHeight) / stepY) + 1);
+		var selectedShape = selected == null ? null : selected.getShape();
+		var hierarchy = viewer.getHierarchy();
+		List<PathObject> nearby = new ArrayList<>();
+		double[] allX = new double[nx * ny];
+		double[] allY = new double[nx * ny];
+		xs = new double[nx * ny];
+		ys = new double[nx * ny];
+		int n = 0, i = 0;
+		for (int row = 0; row < ny; row++) {
+			double y = bounds.y + (ny == 1 ? bounds.height / 2.0 : Math.min(row * stepY + fieldHeight / 2, bounds.height - fieldHeight / 2));
+			for (int col = 0; col < nx; col++) {
+				// Alternate direction on every row
+				int c = row % 2 == 0 ? col : nx - 1 - col;
+				double x = bounds.x + (nx == 1 ? bounds.width / 2.0 : Math.min(c * stepX + fieldWidth / 2, bounds.width - fieldWidth / 2));
+				allX[n] = x;
+				allY[n] = y;
+				n++;
+				boolean inRegion = selectedShape != null ?
+						selectedShape.intersects(x - fieldWidth / 2, y - fieldHeight / 2, fieldWidth, fieldHeight) :
+						overlapsAnnotation(hierarchy, nearby, x, y);
+				if (inRegion) {
+					xs[i] = x;
+					ys[i] = y;
+					i++;
+				}
+			}
+		}
+		// Without any annotations on this plane, tour the whole image
+		if (i == 0 && selected == null) {
+			xs = allX;
+			ys = allY;
+			i = n;
+		}
+		if (i == 0)
+			return;
+		int skipped = n - i;
+		xs = Arrays.copyOf(xs, i);
+		ys = Arrays.copyOf(ys, i);
+		field = 0;
+		progress = 0;
+		paused = false;
+		active = true;
+		this.viewer = viewer;
+		this.server = server;
+		logger.info("Starting slide tour with {} fields ({} x {}, {} outside the region skipped)", xs.length, nx, ny, skipped);
+		viewer.setCenterPixelLocation(xs[0], ys[0]);
+		prefetchAhead(viewer);
+	}
+
+	/**
+	 * Get the selected annotation's ROI, if it is an area.
+	 * @param viewer
+	 * @return the ROI, or null if no area annotation is selected
+	 */
+	private static ROI getSelectedRegion(QuPathViewer viewer) {
+		var selected = viewer.getSelectedObject();
+		if (selected != null && selected.isAnnotation() && selected.hasROI() && selected.getROI().isArea())
+			return selected.getROI();
+		return null;
+	}
+
+	/**
+	 * Check whether the field centred on a point overlaps an area annotation on the current plane.
+	 * Only annotations found by a spatial query of the hierarchy for the field are checked.
+	 * @param hierarchy
+	 * @param nearby list reused for the query results
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	private boolean overlapsAnnotation(PathObjectHierarchy hierarchy, List<PathObject> nearby, double x, double y) {
+		if (hierarchy == null)
+			return false;
+		double x0 = x - fieldWidth / 2, y0 = y - fieldHeight / 2;
+		var region = ImageRegion.createInstance((int)x0, (int)y0, (int)Math.ceil(fieldWidth), (int)Math.ceil(fieldHeight), z, t);
+		nearby.clear();
+		hierarchy.getObjectsForRegion(PathAnnotationObject.class, region, nearby);
+		for (var annotation : nearby) {
+			var roi = annotation.getROI();
+			if (roi != null && roi.isArea() && roi.getShape().intersects(x0, y0, fieldWidth, fieldHeight))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Stop the tour if the viewer, or the image it shows, has changed since the tour started.
+	 * @param viewer
+	 * @return true if the tour is still valid for the viewer
+	 */
+	private boolean checkViewer(QuPathViewer viewer) {
+		if (viewer == this.viewer && viewer.getServer() == server)
+			return true;
+		logger.info("Slide tour stopped because the image changed");
+		stop();
+		return false;
+	}
+
+	void stop() {
+		if (!active)
+			return;
+		active = false;
+		prefetcher.cancel();
+		viewer = null;
+		server = null;
+		logger.info("Slide tour stopped at field {} of {}", field + 1, xs.length);
+	}
+
+	void togglePause() {
+		paused = !paused;
+	}
+
+	/**
+	 * Pause the tour and move directly to the next field.
+	 * @param viewer
+	 */
+	void step(QuPathViewer viewer) {
+		if (!active || !checkViewer(viewer))
+			return;
+		paused = true;
+		progress = 0;
+		if (field < xs.length - 1)
+			field++;
+		viewer.setCenterPixelLocation(xs[field], ys[field]);
+		prefetchAhead(viewer);
+	}
+
+	/**
+	 * Advance the tour.
+	 * @param viewer
+	 * @param speed value in the range -1 to 1 controlling speed and direction
+	 */
+	void update(QuPathViewer viewer, double speed) {
+		if (!active || !checkViewer(viewer) || paused || Math.abs(speed) < AXIS_THRESHOLD)
+			return;
+		int previousField = field;
+		progress += speed * MAX_FIELDS_PER_TICK;
+		while (progress >= 1) {
+			if (field >= xs.length - 1) {
+				viewer.setCenterPixelLocation(xs[field], ys[field]);
+				logger.info("Slide tour complete");
+				stop();
+				return;
+			}
+			field++;
+			progress -= 1;
+		}
+		while (progress < 0) {
+			if (field == 0) {
+				progress = 0;
+				break;
+			}
+			field--;
+			progress += 1;
+		}
+		int next = Math.min(field + 1, xs.length - 1);
+		viewer.setCenterPixelLocation(
+				xs[field] + (xs[next] - xs[field]) * progress,
+				ys[field] + (ys[next] - ys[field]) * progress);
+		if (field != previousField)
+			prefetchAhead(viewer);
+	}
+
+	private void prefetchAhead(QuPathViewer viewer) {
+		var server = viewer.getServer();
+		if (server == null)
+			return;
+		List<RegionRequest> requests = new ArrayList<>();
+		for (int i = field + 1; i <= Math.min(field + PREFETCH_FIELDS, xs.length - 1); i++) {
+			int x = (int)Math.max(0, xs[i] - fieldWidth / 2);
+			int y = (int)Math.max(0, ys[i] - fieldHeight / 2);
+			int w = (int)Math.min(fieldWidth, server.getWidth() - x);
+			int h = (int)Math.min(fieldHeight, server.getHeight() - y);
+			if (w > 0 && h > 0)
+				requests.add(RegionRequest.createInstance(server.getPath(), downsample, x, y, w, h, z, t));
+		}
+		if (!requests.isEmpty())
+			prefetcher.prefetch(server, viewer.getImageRegionStore(), requests);
+	}
+
+}
@@ -0,0 +1,175 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+import java.util.SplittableRandom;
+
+import net.java.games.input.AbstractComponent;
+import net.java.games.input.AbstractController;
+import net.java.games.input.Component;
+import net.java.games.input.Component.Identifier;
+import net.java.games.input.Controller;
+import net.java.games.input.Event;
+import net.java.games.input.Rumbler;
+
+/**
+ * A JInput {@link Controller} that generates its own input, for exercising the input loop without a device.
+ * <p>
+ * Each call to {@link #poll()} advances the waveform by one step.
+ */
+class SyntheticController extends AbstractController {
+
+	/**
+	 * Input patterns that can be generated.
+	 */
+	enum Waveform {
+		/**
+		 * Uniform random values on every axis, with buttons rarely pressed.
+		 */
+		NOISE,
+		/**
+		 * Slow sine sweeps on every axis, out of phase with one another.
+		 */
+		SWEEP,
+		/**
+		 * Axes at rest, with every button toggling on every poll.
+		 */
+		BUTTON_STORM
+	}
+
+	private static final Identifier[] AXIS_IDS = {
+			Identifier.Axis.X, Identifier.Axis.Y, Identifier.Axis.Z,
+			Identifier.Axis.RX, Identifier.Axis.RY, Identifier.Axis.RZ
+	};
+
+	private static final Identifier[] BUTTON_IDS = {
+			Identifier.Button._0, Identifier.Button._1, Identifier.Button._2, Identifier.Button._3,
+			Identifier.Button._4, Identifier.Button._5, Identifier.Button._6, Identifier.Button._7,
+			Identifier.Button._8
+	};
+
+	private final Type type;
+	private final Waveform waveform;
+	private final double amplitude;
+	private final SyntheticComponent[] axes;
+	private final SyntheticComponent[] buttons;
+	private final SplittableRandom random;
+
+	private long step = 0L;
+
+	/**
+	 * Create a synthetic controller.
+	 * @param name
+	 * @param type {@link Type#STICK} or {@link Type#GAMEPAD}, to select how the input is interpreted
+	 * @param waveform the input to generate
+	 * @param amplitude maximum absolute axis value, between 0 and 1
+	 * @param seed seed for the random number generator
+	 */
+	SyntheticController(String name, Type type, Waveform waveform, double amplitude, long seed) {
+		this(name, type, waveform, amplitude, seed, createComponents(AXIS_IDS), createComponents(BUTTON_IDS));
+	}
+
+	private SyntheticController(String name, Type type, Waveform waveform, double amplitude, long seed,
+			SyntheticComponent[] axes, SyntheticComponent[] buttons) {
+		super(name, concat(axes, buttons), new Controller[0], new Rumbler[0]);
+		this.type = type;
+		this.waveform = waveform;
+		this.amplitude = amplitude;
+		this.axes = axes;
+		this.buttons = buttons;
+		this.random = new SplittableRandom(seed);
+	}
+
+	private static SyntheticComponent[] createComponents(Identifier[] ids) {
+		var components = new SyntheticComponent[ids.length];
+		for (int i = 0; i < ids.length; i++)
+			components[i] = new SyntheticComponent(ids[i], ids[i] instanceof Identifier.Axis);
+		return components;
+	}
+
+	private static Component[] concat(SyntheticComponent[] axes, SyntheticComponent[] buttons) {
+		var components = new Component[axes.length + buttons.length];
+		System.arraycopy(axes, 0, components, 0, axes.length);
+		System.arraycopy(buttons, 0, components, axes.length, buttons.length);
+		return components;
+	}
+
+	@Override
+	public Type getType() {
+		return type;
+	}
+
+	@Override
+	protected void pollDevice() {
+		step++;
+		switch (waveform) {
+		case NOISE:
+			for (var axis : axes)
+				axis.value = (float)(amplitude * (random.nextDouble() * 2 - 1));
+			for (var button : buttons)
+				button.value = random.nextInt(100) == 0 ? 1f : 0f;
+			break;
+		case SWEEP:
+			for (int i = 0; i < axes.length; i++)
+				axes[i].value = (float)(amplitude * Math.sin(step * 0.02 + i * Math.PI / axes.length));
+			break;
+		case BUTTON_STORM:
+			for (var button : buttons)
+				button.value = (step & 1L) == 0 ? 1f : 0f;
+			break;
+		}
+	}
+
+	@Override
+	protected boolean getNextDeviceEvent(Event event) {
+		return false;
+	}
+
+
+	private static class SyntheticComponent extends AbstractComponent {
+
+		private final boolean analog;
+		private float value = 0f;
+
+		private SyntheticComponent(Identifier id, boolean analog) {
+			super(id.getName(), id);
+			this.analog = analog;
+		}
+
+		@Override
+		protected float poll() {
+			return value;
+		}
+
+		@Override
+		public boolean isAnalog() {
+			return analog;
+		}
+
+		@Override
+		public boolean isRelative() {
+			return false;
+		}
+
+	}
+
+}
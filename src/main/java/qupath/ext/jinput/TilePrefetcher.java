@@ -0,0 +1,90 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.common.ThreadTools;
+import qupath.lib.gui.images.stores.ImageRegionStore;
+import qupath.lib.images.servers.ImageServer;
+import qupath.lib.images.servers.TileRequest;
+import qupath.lib.regions.RegionRequest;
+
+/**
+ * Reads tiles in the background so that they are already in the shared tile cache when the viewer asks for them.
+ * <p>
+ * Only the most recent submission matters: submitting a new batch abandons whatever remained of the previous one,
+ * so a fast-moving controller never builds up a backlog of stale reads.
+ */
+class TilePrefetcher {
+
+	private static final Logger logger = LoggerFactory.getLogger(TilePrefetcher.class);
+
+	private static final ExecutorService pool = Executors.newSingleThreadExecutor(ThreadTools.createThreadFactory("controller-prefetch-", true));
+
+	private final AtomicLong generation = new AtomicLong();
+
+	/**
+	 * Request that all tiles needed to display the given regions are read into the cache.
+	 * Any tiles already cached are skipped.
+	 * @param server the server to read from
+	 * @param store the store used by the viewer, to check for cached tiles (may be null)
+	 * @param regions the regions to prefetch, in priority order
+	 */
+	void prefetch(ImageServer<BufferedImage> server, ImageRegionStore<BufferedImage> store, Collection<RegionRequest> regions) {
+		long current = generation.incrementAndGet();
+		List<RegionRequest> requests = new ArrayList<>(regions);
+		pool.execute(() -> {
+			for (RegionRequest region : requests) {
+				for (TileRequest tile : server.getTileRequestManager().getTileRequests(region)) {
+					if (generation.get() != current)
+						return;
+					RegionRequest tileRequest = tile.getRegionRequest();
+					if (store != null && store.getCachedTile(server, tileRequest) != null)
+						continue;
+					try {
+						server.readRegion(tileRequest);
+					} catch (Exception e) {
+						logger.debug("Unable to prefetch {}: {}", tileRequest, e.getLocalizedMessage());
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Abandon any outstanding prefetch requests.
+	 */
+	void cancel() {
+		generation.incrementAndGet();
+	}
+
+}
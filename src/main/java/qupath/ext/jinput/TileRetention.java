@@ -0,0 +1,269 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.common.ThreadTools;
+import qupath.lib.gui.viewer.QuPathViewer;
+import qupath.lib.images.servers.ImageServer;
+import qupath.lib.images.servers.ImageServerProvider;
+import qupath.lib.images.servers.ServerTools;
+import qupath.lib.regions.RegionRequest;
+
+/**
+ * Keeps tiles around the recent controller path, so that sweeping back over the same region doesn't mean decoding
+ * its tiles again after other viewers or tasks have pushed them out of the shared tile cache.
+ * <p>
+ * The last few views visited with a controller form a trail. In the background, tiles covering each view (plus a
+ * margin) at the current and adjacent pyramid levels are looked up in the shared cache: tiles found there are retained
+ * here, and retained tiles that the shared cache has lost are put back.
+ * Nothing is read from the server, so only tiles that have already been decoded are retained.
+ * <p>
+ * Retained tiles are aged out least-recently-used first to stay within the budget set in the preferences,
+ * and are all released if the heap is close to full.
+ * <p>
+ * Retention is off unless a budget is set. Looking tiles up in the shared cache also moves them to the front of its
+ * least-recently-used order, so a long trail can push out tiles that other viewers or tasks are still using.
+ */
+class TileRetention {
+
+	private static final Logger logger = LoggerFactory.getLogger(TileRetention.class);
+
+	/**
+	 * Number of views kept in the trail.
+	 */
+	static final int TRAIL_LENGTH = 16;
+
+	// Margin added around each view, as a fraction of the view size
+	private static final double MARGIN = 0.5;
+
+	// Fraction of the view size the centre must move before a new view is added to the trail
+	private static final double MIN_MOVE = 0.25;
+
+	// Fraction of the maximum heap above which all retained tiles are released
+	private static final double HEAP_PRESSURE = 0.85;
+
+	private static final TileRetention instance = new TileRetention();
+
+	private static final ExecutorService pool = Executors.newSingleThreadExecutor(ThreadTools.createThreadFactory("controller-retention-", true));
+
+	private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+
+	private final AtomicLong generation = new AtomicLong();
+
+	// Trail of recent views, oldest first - only accessed on the JavaFX thread
+	private final Deque<RegionRequest> trail = new ArrayDeque<>();
+	private ImageServer<BufferedImage> trailServer;
+	private double lastX = Double.NaN, lastY = Double.NaN, lastDownsample = Double.NaN;
+	private int lastZ = -1, lastT = -1;
+
+	// Retained tiles in access order, guarded by this
+	private final Map<RegionRequest, BufferedImage> tiles = new LinkedHashMap<>(256, 0.75f, true);
+	private long bytes = 0L;
+
+	// Statistics, guarded by this
+	private long requests = 0L;
+	private long hits = 0L;
+	private long evictions = 0L;
+	private long releases = 0L;
+
+	private TileRetention() {}
+
+	static TileRetention getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Add the viewer's current view to the trail if it has moved far enough, and refresh the retained tiles.
+	 * This should be called from the JavaFX thread on each heartbeat; it returns quickly if the view hasn't moved.
+	 * @param viewer
+	 */
+	void update(QuPathViewer viewer) {
+		long budget = getBudget();
+		if (budget <= 0) {
+			release();
+			return;
+		}
+		var server = viewer.getServer();
+		if (server == null)
+			return;
+
+		double x = viewer.getCenterPixelX();
+		double y = viewer.getCenterPixelY();
+		double downsample = viewer.getDownsampleFactor();
+		int z = viewer.getZPosition();
+		int t = viewer.getTPosition();
+		if (server == trailServer && downsample == lastDownsample && z == lastZ && t == lastT) {
+			double minMove = viewer.getView().getWidth() * downsample * MIN_MOVE;
+			if (Math.abs(x - lastX) < minMove && Math.abs(y - lastY) < minMove)
+				return;
+		}
+		if (server != trailServer) {
+			trail.clear();
+			trailServer = server;
+		}
+		lastX = x;
+		lastY = y;
+		lastDownsample = downsample;
+		lastZ = z;
+		lastT = t;
+
+		Rectangle bounds = viewer.getDisplayedRegionShape().getBounds();
+		int mx = (int)(bounds.width * MARGIN);
+		int my = (int)(bounds.height * MARGIN);
+		bounds.grow(mx, my);
+		bounds = bounds.intersection(new Rectangle(0, 0, server.getWidth(), server.getHeight()));
+		if (bounds.isEmpty())
+			return;
+
+		if (trail.size() == TRAIL_LENGTH)
+			trail.removeFirst();
+		trail.addLast(RegionRequest.createInstance(server.getPath(), downsample,
+				bounds.x, bounds.y, bounds.width, bounds.height, z, t));
+
+		var views = new ArrayList<>(trail);
+		long current = generation.incrementAndGet();
+		pool.execute(() -> retain(server, views, budget, current));
+	}
+
+	private void retain(ImageServer<BufferedImage> server, List<RegionRequest> views, long budget, long current) {
+		Map<RegionRequest, BufferedImage> cache = ImageServerProvider.getCache(BufferedImage.class);
+		if (cache == null)
+			return;
+		if (isHeapUnderPressure()) {
+			release();
+			return;
+		}
+		double[] downsamples = server.getPreferredDownsamples();
+		// Oldest views first, so that the tiles of the newest view end up most recently used
+		views:
+		for (int i = 0; i < views.size(); i++) {
+			var view = views.get(i);
+			boolean newest = i == views.size() - 1;
+			int level = ServerTools.getPreferredResolutionLevel(server, view.getDownsample());
+			for (int l = Math.max(0, level - 1); l <= Math.min(downsamples.length - 1, level + 1); l++) {
+				var request = RegionRequest.createInstance(view.getPath(), downsamples[l],
+						view.getX(), view.getY(), view.getWidth(), view.getHeight(), view.getZ(), view.getT());
+				for (var tile : server.getTileRequestManager().getTileRequests(request)) {
+					if (generation.get() != current)
+						break views;
+					retainTile(cache, tile.getRegionRequest(), newest && l == level);
+				}
+			}
+		}
+		trim(budget);
+	}
+
+	/**
+	 * Retain a tile from the shared cache, or restore it to the cache if it has been lost.
+	 * @param cache the shared tile cache
+	 * @param key the tile request
+	 * @param count true if the lookup should count towards the hit rate (i.e. the tile is in the current view)
+	 */
+	private void retainTile(Map<RegionRequest, BufferedImage> cache, RegionRequest key, boolean count) {
+		var cached = cache.get(key);
+		BufferedImage restored = null;
+		synchronized (this) {
+			var retained = tiles.get(key);
+			if (cached != null) {
+				if (retained == null) {
+					tiles.put(key, cached);
+					bytes += estimateBytes(cached);
+				}
+				return;
+			}
+			if (count)
+				requests++;
+			if (retained != null) {
+				if (count)
+					hits++;
+				restored = retained;
+			}
+		}
+		if (restored != null)
+			cache.put(key, restored);
+	}
+
+	private synchronized void trim(long budget) {
+		Iterator<BufferedImage> iter = tiles.values().iterator();
+		while (bytes > budget && iter.hasNext()) {
+			bytes -= estimateBytes(iter.next());
+			iter.remove();
+			evictions++;
+		}
+	}
+
+	private synchronized void release() {
+		if (tiles.isEmpty())
+			return;
+		logger.debug("Releasing {} retained tiles ({} MB)", tiles.size(), bytes / (1024 * 1024));
+		tiles.clear();
+		bytes = 0L;
+		releases++;
+	}
+
+	private boolean isHeapUnderPressure() {
+		var usage = memoryBean.getHeapMemoryUsage();
+		long max = usage.getMax();
+		return max > 0 && usage.getUsed() > max * HEAP_PRESSURE;
+	}
+
+	private static long getBudget() {
+		return AdvancedControllerExtension.controllerTileRetentionProperty().get() * 1024L * 1024L;
+	}
+
+	private static long estimateBytes(BufferedImage img) {
+		var buffer = img.getRaster().getDataBuffer();
+		return (long)buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+	}
+
+	/**
+	 * Get a summary of how much is retained and how often it has supplied a tile the shared cache had lost.
+	 * Only tiles in the current view at its own pyramid level count towards the hit rate.
+	 * @return
+	 */
+	synchronized String getStatistics() {
+		double hitRate = requests == 0 ? Double.NaN : hits * 100.0 / requests;
+		return String.format("%d tiles (%.1f MB of %d MB), evicted from shared cache: %d, restored: %d (%.1f%%), aged out: %d, released under heap pressure: %d",
+				tiles.size(), bytes / (1024.0 * 1024.0), getBudget() / (1024 * 1024),
+				requests, hits, hitRate, evictions, releases);
+	}
+
+}
@@ -0,0 +1,199 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.common.ThreadTools;
+import qupath.lib.gui.QuPathGUI;
+import qupath.lib.gui.viewer.QuPathViewer;
+import qupath.lib.io.GsonTools;
+import qupath.lib.regions.RegionRequest;
+
+/**
+ * Bookmarked views for each image.
+ * <p>
+ * When a project is open, bookmarks belong to the project entry and are saved as JSON in the entry's data directory;
+ * otherwise they are kept (by server path) until QuPath is closed.
+ * Adding a bookmark only reads a few values from the viewer - saving happens on a background thread.
+ */
+class ViewBookmarks {
+
+	private static final Logger logger = LoggerFactory.getLogger(ViewBookmarks.class);
+
+	static final String FILE_NAME = "controller-bookmarks.json";
+
+	private static final ExecutorService saver = Executors.newSingleThreadExecutor(ThreadTools.createThreadFactory("controller-bookmarks-", true));
+
+	private static ViewBookmarks instance;
+
+	private final Map<String, List<Bookmark>> bookmarks = new HashMap<>();
+
+	private ViewBookmarks() {}
+
+	static synchronized ViewBookmarks getInstance() {
+		if (instance == null)
+			instance = new ViewBookmarks();
+		return instance;
+	}
+
+	/**
+	 * Bookmark the current view.
+	 * @param qupath
+	 * @param viewer
+	 */
+	void add(QuPathGUI qupath, QuPathViewer viewer) {
+		var server = viewer.getServer();
+		if (server == null)
+			return;
+		var bookmark = new Bookmark();
+		bookmark.x = viewer.getCenterPixelX();
+		bookmark.y = viewer.getCenterPixelY();
+		bookmark.downsample = viewer.getDownsampleFactor();
+		bookmark.rotation = viewer.getRotation();
+		bookmark.width = viewer.getView().getWidth() * bookmark.downsample;
+		bookmark.height = viewer.getView().getHeight() * bookmark.downsample;
+		bookmark.z = viewer.getZPosition();
+		bookmark.t = viewer.getTPosition();
+		bookmark.timestamp = System.currentTimeMillis();
+
+		var path = getFile(qupath, viewer);
+		String key = getKey(qupath, viewer);
+		Bookmark[] snapshot;
+		synchronized (bookmarks) {
+			var list = getList(key, path);
+			list.add(bookmark);
+			snapshot = list.toArray(Bookmark[]::new);
+		}
+		logger.info("Bookmark {} added at ({}, {}), downsample {}", snapshot.length, Math.round(bookmark.x), Math.round(bookmark.y), bookmark.downsample);
+		if (path != null)
+			saver.execute(() -> save(path, snapshot));
+	}
+
+	/**
+	 * Get a copy of the bookmarks for the image in the viewer.
+	 * @param qupath
+	 * @param viewer
+	 * @return
+	 */
+	List<Bookmark> getBookmarks(QuPathGUI qupath, QuPathViewer viewer) {
+		if (viewer.getServer() == null)
+			return List.of();
+		var path = getFile(qupath, viewer);
+		String key = getKey(qupath, viewer);
+		synchronized (bookmarks) {
+			return new ArrayList<>(getList(key, path));
+		}
+	}
+
+	private List<Bookmark> getList(String key, Path path) {
+		return bookmarks.computeIfAbsent(key, k -> load(path));
+	}
+
+	private static String getKey(QuPathGUI qupath, QuPathViewer viewer) {
+		var project = qupath.getProject();
+		var entry = project == null ? null : project.getEntry(viewer.getImageData());
+		return entry == null ? viewer.getServer().getPath() : entry.getID();
+	}
+
+	private static Path getFile(QuPathGUI qupath, QuPathViewer viewer) {
+		var project = qupath.getProject();
+		var entry = project == null ? null : project.getEntry(viewer.getImageData());
+		var entryPath = entry == null ? null : entry.getEntryPath();
+		return entryPath == null ? null : entryPath.resolve(FILE_NAME);
+	}
+
+	private static List<Bookmark> load(Path path) {
+		if (path == null || !Files.isRegularFile(path))
+			return new ArrayList<>();
+		try (var reader = Files.newBufferedReader(path)) {
+			var loaded = GsonTools.getInstance().fromJson(reader, Bookmark[].class);
+			return loaded == null ? new ArrayList<>() : new ArrayList<>(Arrays.asList(loaded));
+		} catch (Exception e) {
+			logger.warn("Unable to read bookmarks from " + path + ": " + e.getLocalizedMessage(), e);
+			return new ArrayList<>();
+		}
+	}
+
+	private static void save(Path path, Bookmark[] snapshot) {
+		try {
+			Files.createDirectories(path.getParent());
+			// Write to a temporary file first, so a failed write can't lose existing bookmarks
+			var temp = path.resolveSibling(FILE_NAME + ".tmp");
+			try (var writer = Files.newBufferedWriter(temp)) {
+				GsonTools.getInstance(true).toJson(snapshot, writer);
+			}
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			logger.error("Unable to save bookmarks to " + path + ": " + e.getLocalizedMessage(), e);
+		}
+	}
+
+
+	/**
+	 * A bookmarked view. Coordinates and sizes are in full-resolution image pixels.
+	 */
+	static class Bookmark {
+
+		double x, y;
+		double downsample;
+		double rotation;
+		double width, height;
+		int z, t;
+		long timestamp;
+
+		/**
+		 * Get the smallest region containing the bookmarked view, which may be rotated.
+		 * @param path server path
+		 * @param imageWidth
+		 * @param imageHeight
+		 * @return the region, or null if the view doesn't overlap the image
+		 */
+		RegionRequest toRegionRequest(String path, int imageWidth, int imageHeight) {
+			double sin = Math.abs(Math.sin(rotation)), cos = Math.abs(Math.cos(rotation));
+			double halfWidth = (width * cos + height * sin) / 2;
+			double halfHeight = (width * sin + height * cos) / 2;
+			int x1 = (int)Math.max(0, Math.floor(x - halfWidth));
+			int y1 = (int)Math.max(0, Math.floor(y - halfHeight));
+			int x2 = (int)Math.min(imageWidth, Math.ceil(x + halfWidth));
+			int y2 = (int)Math.min(imageHeight, Math.ceil(y + halfHeight));
+			if (x2 <= x1 || y2 <= y1)
+				return null;
+			return RegionRequest.createInstance(path, downsample, x1, y1, x2 - x1, y2 - y1, z, t);
+		}
+
+	}
+
+}
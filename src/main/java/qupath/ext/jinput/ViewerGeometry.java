@@ -0,0 +1,112 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+import java.awt.Shape;
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import qupath.lib.gui.viewer.QuPathViewer;
+import qupath.lib.gui.viewer.QuPathViewerListener;
+import qupath.lib.images.ImageData;
+import qupath.lib.objects.PathObject;
+
+/**
+ * Values derived from a viewer's size and downsample that the controller loop needs on every heartbeat.
+ * <p>
+ * These are recalculated when the viewer reports that its image or visible region has changed, and read as plain
+ * fields in the loop, so that nothing is allocated or recalculated per heartbeat.
+ * There is one instance per viewer, shared by all controllers.
+ */
+class ViewerGeometry implements QuPathViewerListener {
+
+	/**
+	 * Viewer width for which pan speeds are specified, in screen pixels.
+	 * Speeds scale with the actual width, so a second of full deflection crosses the same fraction of any viewer.
+	 */
+	static final double REFERENCE_WIDTH = 1000.0;
+
+	private static final Map<QuPathViewer, ViewerGeometry> instances = new WeakHashMap<>();
+
+	private double downsample = Double.NaN;
+	private double width = Double.NaN;
+	// Image pixels per screen pixel, scaled by the viewer width relative to the reference width
+	private double panFactor = 1.0;
+
+	private ViewerGeometry(QuPathViewer viewer) {
+		update(viewer);
+		viewer.addViewerListener(this);
+		viewer.getView().widthProperty().addListener((v, o, n) -> update(viewer));
+	}
+
+	/**
+	 * Get the geometry for a viewer. This should only be called from the JavaFX thread.
+	 * @param viewer
+	 * @return
+	 */
+	static ViewerGeometry getInstance(QuPathViewer viewer) {
+		return instances.computeIfAbsent(viewer, ViewerGeometry::new);
+	}
+
+	/**
+	 * Get the number of image pixels to pan per heartbeat, at full deflection.
+	 * @param screenPixelsPerSecond pan speed for a viewer {@link #REFERENCE_WIDTH} pixels wide
+	 * @param heartbeatSeconds
+	 * @return
+	 */
+	double getPanScale(double screenPixelsPerSecond, double heartbeatSeconds) {
+		return screenPixelsPerSecond * heartbeatSeconds * panFactor;
+	}
+
+	private void update(QuPathViewer viewer) {
+		double newDownsample = viewer.getDownsampleFactor();
+		double newWidth = viewer.getView().getWidth();
+		if (newDownsample == downsample && newWidth == width)
+			return;
+		downsample = newDownsample;
+		width = newWidth;
+		double scale = newWidth > 1 ? newWidth / REFERENCE_WIDTH : 1.0;
+		panFactor = newDownsample * scale;
+	}
+
+	@Override
+	public void imageDataChanged(QuPathViewer viewer, ImageData<BufferedImage> imageDataOld, ImageData<BufferedImage> imageDataNew) {
+		update(viewer);
+	}
+
+	@Override
+	public void visibleRegionChanged(QuPathViewer viewer, Shape shape) {
+		// Called for resizing and zooming, but also for panning - so only the downsample & width are checked
+		update(viewer);
+	}
+
+	@Override
+	public void selectedObjectChanged(QuPathViewer viewer, PathObject pathObjectSelected) {}
+
+	@Override
+	public void viewerClosed(QuPathViewer viewer) {
+		viewer.removeViewerListener(this);
+		instances.remove(viewer);
+	}
+
+}
@@ -0,0 +1,73 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+import java.util.function.Function;
+
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import qupath.lib.gui.QuPathGUI;
+import qupath.lib.gui.viewer.QuPathViewer;
+import qupath.lib.gui.viewer.overlays.PathOverlay;
+
+/**
+ * Shows an overlay on the active viewer while a property is true, moving it whenever another viewer becomes active.
+ */
+class ViewerOverlayToggle {
+
+	private final QuPathGUI qupath;
+	private final Function<QuPathViewer, PathOverlay> overlayFactory;
+	private final BooleanProperty showOverlay = new SimpleBooleanProperty(false);
+
+	private QuPathViewer viewer;
+	private PathOverlay overlay;
+
+	/**
+	 * @param qupath
+	 * @param overlayFactory creates a new overlay for a viewer, each time the overlay is shown
+	 */
+	ViewerOverlayToggle(QuPathGUI qupath, Function<QuPathViewer, PathOverlay> overlayFactory) {
+		this.qupath = qupath;
+		this.overlayFactory = overlayFactory;
+		showOverlay.addListener((v, o, n) -> update());
+		qupath.viewerProperty().addListener((v, o, n) -> update());
+	}
+
+	BooleanProperty showOverlayProperty() {
+		return showOverlay;
+	}
+
+	private void update() {
+		var target = showOverlay.get() ? qupath.getViewer() : null;
+		if (target == viewer)
+			return;
+		if (viewer != null)
+			viewer.getCustomOverlayLayers().remove(overlay);
+		viewer = target;
+		overlay = null;
+		if (viewer != null) {
+			overlay = overlayFactory.apply(viewer);
+			viewer.getCustomOverlayLayers().add(overlay);
+		}
+	}
+
+}
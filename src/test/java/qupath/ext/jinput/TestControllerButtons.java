@@ -0,0 +1,58 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class TestControllerButtons {
+
+	@Test
+	public void testPressOnce() {
+		var buttons = new ControllerButtons();
+		assertTrue(buttons.isNewlyPressed(3, 1f));
+		assertTrue(buttons.isPressed(3));
+		// Holding the button down doesn't fire again
+		assertFalse(buttons.isNewlyPressed(3, 1f));
+		assertFalse(buttons.isNewlyPressed(3, 0.5f));
+		assertFalse(buttons.isNewlyPressed(3, 0f));
+		assertFalse(buttons.isPressed(3));
+		assertTrue(buttons.isNewlyPressed(3, 1f));
+	}
+
+	@Test
+	public void testMask() {
+		var buttons = new ControllerButtons();
+		buttons.isNewlyPressed(0, 1f);
+		buttons.isNewlyPressed(5, 1f);
+		buttons.isNewlyPressed(63, 1f);
+		assertEquals(1L | (1L << 5) | (1L << 63), buttons.getPressedMask());
+		buttons.isNewlyPressed(5, 0f);
+		assertFalse(buttons.isPressed(5));
+		assertTrue(buttons.isPressed(63));
+		assertEquals(1L | (1L << 63), buttons.getPressedMask());
+	}
+
+}
@@ -0,0 +1,183 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import net.java.games.input.Controller;
+import net.java.games.input.Controller.Type;
+import qupath.ext.jinput.AdvancedControllerActionFactory.ControllerChangeListener;
+import qupath.ext.jinput.AdvancedControllerActionFactory.ControllerState;
+import qupath.ext.jinput.SyntheticController.Waveform;
+
+/**
+ * Drives the controller loop with synthetic controllers and no viewer.
+ * <p>
+ * This covers registration, lifecycle states and the time taken to poll controllers and publish their state on the
+ * event bus. It doesn't cover applying input to a viewer, since {@link ProfiledController} needs a real QuPath viewer.
+ */
+public class TestControllerLoop {
+
+	/**
+	 * Maximum 99th percentile time from the start of a heartbeat to each controller's state being published,
+	 * as a fraction of the heartbeat.
+	 * This is wall-clock time, so is set to the whole heartbeat - far above what polling synthetic controllers
+	 * should need - to leave headroom for busy CI machines. Exceeding it means ticks would overrun the heartbeat.
+	 */
+	private static final double MAX_PUBLISH_LATENCY_FRACTION = 1.0;
+
+	@Test
+	public void testLifecycle() {
+		var listener = createListener(List.of(
+				new SyntheticController("Stick", Type.STICK, Waveform.SWEEP, 1.0, 0),
+				new SyntheticController("Pad", Type.GAMEPAD, Waveform.NOISE, 1.0, 1)), -1);
+		assertTrue(listener.registerControllers());
+		var controllers = listener.getControllers();
+		assertEquals(2, controllers.size());
+		for (var controller : controllers)
+			assertEquals(ControllerState.CONNECTED, listener.getState(controller));
+
+		long before = AdvancedControllerActionFactory.getEventBus().getPublishedSequence();
+		listener.tick();
+		assertEquals(before + 2, AdvancedControllerActionFactory.getEventBus().getPublishedSequence());
+		// There's no viewer, so nothing is being controlled
+		for (var controller : controllers)
+			assertEquals(ControllerState.IDLE, listener.getState(controller));
+
+		listener.turnOffController();
+		assertFalse(listener.controllerOnProperty().get());
+		// Turning off keeps the controllers, so they can be resumed without searching again
+		assertEquals(2, listener.getControllers().size());
+		for (var controller : controllers)
+			assertEquals(ControllerState.SUSPENDED, listener.getState(controller));
+	}
+
+	@Test
+	public void testUnplugged() {
+		var listener = createListener(List.of(
+				new SyntheticController("Stick", Type.STICK, Waveform.SWEEP, 1.0, 0)), 3);
+		listener.registerControllers();
+		var controller = listener.getController();
+		for (int i = 0; i < 3; i++)
+			listener.tick();
+		assertEquals(1, listener.getControllers().size());
+		listener.tick();
+		assertTrue(listener.getControllers().isEmpty());
+		assertNull(listener.getState(controller));
+		assertFalse(listener.controllerOnProperty().get());
+	}
+
+	/**
+	 * Check the time from the start of a tick to each controller's state being published on the event bus.
+	 * This is the polling and publishing part of input latency only; the viewer isn't updated.
+	 */
+	@Test
+	public void testPublishLatencyWithinHeartbeat() {
+		List<Controller> devices = new ArrayList<>();
+		for (int i = 0; i < 8; i++)
+			devices.add(new SyntheticController("Synthetic " + i, i % 2 == 0 ? Type.STICK : Type.GAMEPAD, Waveform.NOISE, 1.0, i));
+		var listener = createListener(devices, -1);
+		listener.registerControllers();
+
+		var histogram = new LatencyHistogram();
+		long[] tickStart = new long[1];
+		boolean[] recording = new boolean[1];
+		InputEventListener eventListener = e -> {
+			if (recording[0])
+				histogram.record(System.nanoTime() - tickStart[0]);
+		};
+		var bus = AdvancedControllerActionFactory.getEventBus();
+		bus.addListener(eventListener);
+		try {
+			for (int i = 0; i < 5000; i++) {
+				// Warm up before recording
+				recording[0] = i >= 1000;
+				tickStart[0] = System.nanoTime();
+				listener.tick();
+			}
+		} finally {
+			bus.removeListener(eventListener);
+		}
+
+		assertEquals(4000L * devices.size(), histogram.getCount());
+		double maxMillis = listener.getHeartbeat() * MAX_PUBLISH_LATENCY_FRACTION;
+		double p99 = histogram.getPercentileMillis(99);
+		assertTrue(p99 <= maxMillis,
+				"Tick to publish latency p99 " + p99 + " ms exceeds " + maxMillis + " ms (" + histogram.summarize() + ")");
+	}
+
+	/**
+	 * Create a listener that wraps each controller so that it is polled, without needing a viewer.
+	 * @param devices
+	 * @param maxPolls number of successful polls before each controller reports that it has been unplugged,
+	 *                 or -1 for no limit
+	 * @return
+	 */
+	private static ControllerChangeListener createListener(List<Controller> devices, int maxPolls) {
+		return new ControllerChangeListener(null, () -> devices) {
+			@Override
+			QuPathAdvancedController createAdvancedController(Controller controller) {
+				return new PollingController(controller, maxPolls);
+			}
+		};
+	}
+
+	private static class PollingController implements QuPathAdvancedController {
+
+		private final Controller controller;
+		private final int maxPolls;
+		private int polls = 0;
+
+		private PollingController(Controller controller, int maxPolls) {
+			this.controller = controller;
+			this.maxPolls = maxPolls;
+		}
+
+		@Override
+		public String getControllerName() {
+			return controller.getName();
+		}
+
+		@Override
+		public boolean updateViewer() {
+			if (maxPolls >= 0 && polls >= maxPolls)
+				return false;
+			polls++;
+			return controller.poll();
+		}
+
+		@Override
+		public Controller getController() {
+			return controller;
+		}
+
+	}
+
+}
@@ -0,0 +1,93 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import net.java.games.input.Controller.Type;
+import qupath.ext.jinput.ControllerProfile.AxisRole;
+import qupath.ext.jinput.ControllerProfile.ButtonAction;
+import qupath.ext.jinput.SyntheticController.Waveform;
+
+public class TestControllerProfile {
+
+	@Test
+	public void testProfilesRead() {
+		var profiles = ControllerProfile.getProfiles();
+		assertFalse(profiles.isEmpty());
+		for (var profile : profiles) {
+			assertNotNull(profile.name);
+			assertTrue(profile.panSpeed > 0, "Pan speed for " + profile);
+			for (var axis : profile.axes) {
+				assertNotNull(axis.component, "Axis component for " + profile);
+				assertNotNull(axis.role, "Unknown axis role for " + profile + " " + axis.component);
+			}
+			for (var entry : profile.buttons.entrySet())
+				assertNotNull(entry.getValue(), "Unknown button action for " + profile + " " + entry.getKey());
+			for (int i = 1; i < profile.magnifications.length; i++)
+				assertTrue(profile.magnifications[i] > profile.magnifications[i-1], "Magnifications must increase for " + profile);
+		}
+	}
+
+	@Test
+	public void testFind() {
+		var stick = ControllerProfile.find(new SyntheticController("Stick", Type.STICK, Waveform.NOISE, 1.0, 0));
+		assertEquals("3D mouse", stick.name);
+		assertTrue(stick.panOnChangeOnly);
+
+		var gamepad = ControllerProfile.find(new SyntheticController("Pad", Type.GAMEPAD, Waveform.NOISE, 1.0, 0));
+		assertEquals("Gamepad", gamepad.name);
+		assertEquals(ButtonAction.NEXT_Z, gamepad.buttons.get("5"));
+		// Both triggers contribute to zoom
+		assertEquals(2, gamepad.axes.stream().filter(a -> a.role == AxisRole.ZOOM).count());
+	}
+
+	@Test
+	public void testNamePattern() {
+		var profile = new ControllerProfile();
+		profile.namePattern = "space(mouse|navigator)";
+		assertTrue(profile.matches(new SyntheticController("3Dconnexion SpaceMouse Pro", Type.STICK, Waveform.NOISE, 1.0, 0)));
+		assertFalse(profile.matches(new SyntheticController("Xbox controller", Type.GAMEPAD, Waveform.NOISE, 1.0, 0)));
+		profile.type = "Gamepad";
+		assertFalse(profile.matches(new SyntheticController("SpaceNavigator", Type.STICK, Waveform.NOISE, 1.0, 0)));
+	}
+
+	@Test
+	public void testMagnificationSteps() {
+		var profile = new ControllerProfile();
+		profile.magnifications = new double[] {0.25, 1, 4, 10, 40};
+		assertEquals(4.0, profile.getHigherMagnification(1), 1e-9);
+		assertEquals(4.0, profile.getHigherMagnification(2.5), 1e-9);
+		assertEquals(40.0, profile.getHigherMagnification(40), 1e-9);
+		assertEquals(40.0, profile.getHigherMagnification(100), 1e-9);
+		assertEquals(1.0, profile.getLowerMagnification(4), 1e-9);
+		assertEquals(1.0, profile.getLowerMagnification(2.5), 1e-9);
+		assertEquals(0.25, profile.getLowerMagnification(0.25), 1e-9);
+		assertEquals(0.25, profile.getLowerMagnification(0.1), 1e-9);
+	}
+
+}
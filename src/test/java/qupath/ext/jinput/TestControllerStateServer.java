@@ -0,0 +1,164 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+package qupath.ext.jinput;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import net.java.games.input.Controller;
+
+public class TestControllerStateServer {
+
+	@Test
+	public void testFrame() throws Exception {
+		var path = createSocketPath();
+		var controller = createController();
+		try (var server = ControllerStateServer.start(path);
+				var client = SocketChannel.open(UnixDomainSocketAddress.of(path))) {
+			assertEquals(path, server.getPath());
+			awaitSubscribers(server, 1);
+
+			controller.poll();
+			server.publish(null, createEvent(controller));
+			var frame = readFrame(client);
+
+			assertEquals(ControllerStateServer.MAGIC, frame.getInt(0));
+			assertEquals(ControllerStateServer.VERSION, frame.getShort(4));
+			assertEquals(controller.getComponents().length, frame.getShort(6));
+			assertEquals(1L, frame.getLong(8));
+			// No viewer, so no centre
+			assertTrue(Double.isNaN(frame.getDouble(24)));
+			for (int i = 0; i < controller.getComponents().length; i++)
+				assertEquals(controller.getComponents()[i].getPollData(), frame.getFloat(64 + i * Float.BYTES), 1e-6);
+		}
+		assertFalse(Files.exists(path));
+	}
+
+	@Test
+	public void testDropToLatest() throws Exception {
+		var path = createSocketPath();
+		var controller = createController();
+		int n = 100_000;
+		try (var server = ControllerStateServer.start(path);
+				var client = SocketChannel.open(UnixDomainSocketAddress.of(path))) {
+			awaitSubscribers(server, 1);
+
+			// Publish much faster than the client reads
+			var event = new InputEvent();
+			for (int i = 0; i < n; i++) {
+				controller.poll();
+				event.set(controller, System.nanoTime());
+				server.publish(null, event);
+			}
+
+			int received = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+				int count = 0;
+				long sequence = 0L;
+				while (sequence < n) {
+					var frame = readFrame(client);
+					assertEquals(ControllerStateServer.MAGIC, frame.getInt(0));
+					long next = frame.getLong(8);
+					assertTrue(next > sequence, "Sequence went backwards");
+					sequence = next;
+					count++;
+				}
+				return count;
+			});
+			assertTrue(received < n, "Expected frames to be dropped, but received " + received);
+		}
+	}
+
+	@Test
+	public void testRefusesOtherFiles() throws Exception {
+		var path = createSocketPath();
+		Files.writeString(path, "Not a socket");
+		assertThrows(IOException.class, () -> ControllerStateServer.start(path));
+		assertEquals("Not a socket", Files.readString(path));
+		Files.delete(path);
+
+		Files.createDirectory(path);
+		assertThrows(IOException.class, () -> ControllerStateServer.start(path));
+		assertTrue(Files.isDirectory(path));
+	}
+
+	@Test
+	public void testSocketInUse() throws Exception {
+		var path = createSocketPath();
+		try (var other = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+			other.bind(UnixDomainSocketAddress.of(path));
+			assertThrows(IOException.class, () -> ControllerStateServer.start(path));
+		}
+		// The socket file outlives the channel, as it would if the other process had exited
+		assertTrue(Files.exists(path));
+		try (var server = ControllerStateServer.start(path)) {
+			assertEquals(0, server.getSubscriberCount());
+		}
+	}
+
+	private static Path createSocketPath() throws IOException {
+		var dir = Files.createTempDirectory("qupath-jinput");
+		dir.toFile().deleteOnExit();
+		return dir.resolve("state.sock");
+	}
+
+	private static SyntheticController createController() {
+		return new SyntheticController("Synthetic", Controller.Type.STICK, SyntheticController.Waveform.NOISE, 1.0, 42L);
+	}
+
+	private static InputEvent createEvent(Controller controller) {
+		var event = new InputEvent();
+		event.set(controller, System.nanoTime());
+		return event;
+	}
+
+	private static void awaitSubscribers(ControllerStateServer server, int count) throws InterruptedException {
+		long timeout = System.currentTimeMillis() + 5000;
+		while (server.getSubscriberCount() < count) {
+			assertTrue(System.currentTimeMillis() < timeout, "Subscriber was not accepted");
+			Thread.sleep(5);
+		}
+	}
+
+	private static ByteBuffer readFrame(SocketChannel client) throws IOException {
+		var frame = ByteBuffer.allocate(ControllerStateServer.FRAME_SIZE);
+		while (frame.hasRemaining()) {
+			if (client.read(frame) < 0)
+				throw new IOException("Server closed the connection");
+		}
+		return frame.flip();
+	}
+
+}
@@ -0,0 +1,255 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+package qupath.ext.jinput;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import net.java.games.input.Component;
+import net.java.games.input.Component.Identifier;
+import net.java.games.input.Controller;
+
+public class TestEvdevController {
+
+	private static final double EPSILON = 1e-6;
+
+	@Test
+	public void testReplay() throws Exception {
+		var bytes = new EventWriter()
+				.write(1, EvdevController.EV_ABS, 0, 175)
+				.write(2, EvdevController.EV_SYN, 0, 0)
+				.write(3, EvdevController.EV_KEY, EvdevController.BTN_MISC + 1, 1)
+				.write(4, EvdevController.EV_ABS, 5, -350)
+				.write(5, EvdevController.EV_KEY, EvdevController.BTN_MISC + 1, 0)
+				.toByteArray();
+
+		var controller = new EvdevController("Replay", Controller.Type.STICK,
+				Channels.newChannel(new ByteArrayInputStream(bytes)), 350f);
+		List<Component> components = new ArrayList<>();
+		List<Float> values = new ArrayList<>();
+		List<Long> timestamps = new ArrayList<>();
+		var latch = new CountDownLatch(4);
+		controller.setListener((component, value, micros) -> {
+			components.add(component);
+			values.add(value);
+			timestamps.add(micros);
+			latch.countDown();
+		});
+		controller.start();
+		assertTrue(latch.await(5, TimeUnit.SECONDS), "Replayed events were not all received");
+
+		var x = controller.getComponent(Identifier.Axis.X);
+		var rz = controller.getComponent(Identifier.Axis.RZ);
+		var button = controller.getComponent(Identifier.Button._1);
+		assertEquals(List.of(x, button, rz, button), components);
+		assertEquals(List.of(0.5f, 1f, -1f, 0f), values);
+		assertEquals(List.of(1_000_001L, 3_000_003L, 4_000_004L, 5_000_005L), timestamps);
+
+		// The end of the input is reported when polling
+		long timeout = System.currentTimeMillis() + 5000;
+		while (controller.poll()) {
+			assertTrue(System.currentTimeMillis() < timeout, "End of input was not reported");
+			Thread.sleep(10);
+		}
+		controller.close();
+	}
+
+	@Test
+	public void testCentredAxisWidensSymmetrically() {
+		var controller = new EvdevController("Axes", Controller.Type.STICK,
+				Channels.newChannel(new ByteArrayInputStream(new byte[0])), 350f);
+		var buffer = new EventWriter()
+				.write(0, EvdevController.EV_ABS, 0, 700)
+				.write(0, EvdevController.EV_ABS, 0, 0)
+				.write(0, EvdevController.EV_ABS, 0, -350)
+				.write(0, EvdevController.EV_ABS, 1, -1400)
+				.write(0, EvdevController.EV_ABS, 1, 700)
+				.toBuffer();
+		var x = controller.getComponent(Identifier.Axis.X);
+		var y = controller.getComponent(Identifier.Axis.Y);
+
+		controller.decode(buffer);
+		controller.poll();
+		assertEquals(1.0, x.getPollData(), EPSILON);
+		// Widening on one side must not move the rest position
+		controller.decode(buffer);
+		controller.poll();
+		assertEquals(0.0, x.getPollData(), EPSILON);
+		controller.decode(buffer);
+		controller.poll();
+		assertEquals(-0.5, x.getPollData(), EPSILON);
+
+		controller.decode(buffer);
+		controller.decode(buffer);
+		controller.poll();
+		assertEquals(0.5, y.getPollData(), EPSILON);
+		assertFalse(buffer.hasRemaining());
+
+		assertEquals(EvdevController.EvdevAxis.DEAD_ZONE, x.getDeadZone(), EPSILON);
+	}
+
+	@Test
+	public void testRelativeAxesReturnToRest() {
+		var controller = new EvdevController("Relative", Controller.Type.STICK,
+				Channels.newChannel(new ByteArrayInputStream(new byte[0])), 350f);
+		List<Float> yValues = new ArrayList<>();
+		var y = controller.getComponent(Identifier.Axis.Y);
+		controller.setListener((component, value, micros) -> {
+			if (component == y)
+				yValues.add(value);
+		});
+		var buffer = new EventWriter()
+				// Two reports while moving
+				.write(0, EvdevController.EV_REL, 0, 175)
+				.write(0, EvdevController.EV_REL, 1, -175)
+				.write(0, EvdevController.EV_SYN, EvdevController.SYN_REPORT, 0)
+				.write(1, EvdevController.EV_REL, 1, -350)
+				.write(1, EvdevController.EV_SYN, EvdevController.SYN_REPORT, 0)
+				// Released: the kernel sends no zero-valued relative events, only the next report
+				.write(2, EvdevController.EV_KEY, EvdevController.BTN_MISC, 1)
+				.write(2, EvdevController.EV_SYN, EvdevController.SYN_REPORT, 0)
+				.toBuffer();
+		var x = controller.getComponent(Identifier.Axis.X);
+		var z = controller.getComponent(Identifier.Axis.Z);
+
+		for (int i = 0; i < 3; i++)
+			controller.decode(buffer);
+		controller.poll();
+		assertEquals(0.5, x.getPollData(), EPSILON);
+		assertEquals(-0.5, y.getPollData(), EPSILON);
+
+		// X wasn't reported, so returns to rest while Y is still moving
+		controller.decode(buffer);
+		controller.decode(buffer);
+		controller.poll();
+		assertEquals(0.0, x.getPollData(), EPSILON);
+		assertEquals(-1.0, y.getPollData(), EPSILON);
+
+		controller.decode(buffer);
+		controller.decode(buffer);
+		controller.poll();
+		assertEquals(0.0, y.getPollData(), EPSILON);
+		assertEquals(0.0, z.getPollData(), EPSILON);
+		assertEquals(List.of(-0.5f, -1f, 0f), yValues);
+		assertFalse(buffer.hasRemaining());
+	}
+
+	@Test
+	public void testUnknownCodesIgnored() {
+		var controller = new EvdevController("Gamepad", Controller.Type.GAMEPAD,
+				Channels.newChannel(new ByteArrayInputStream(new byte[0])), 32767f);
+		List<Component> changed = new ArrayList<>();
+		controller.setListener((component, value, micros) -> changed.add(component));
+		var buffer = new EventWriter()
+				// ABS_HAT0X is outside the supported axes
+				.write(0, EvdevController.EV_ABS, 0x10, 1)
+				// BTN_MISC is below the gamepad buttons
+				.write(0, EvdevController.EV_KEY, EvdevController.BTN_MISC, 1)
+				.write(0, EvdevController.EV_KEY, EvdevController.BTN_GAMEPAD, 1)
+				.toBuffer();
+		while (buffer.hasRemaining())
+			controller.decode(buffer);
+		assertEquals(List.of(controller.getComponent(Identifier.Button._0)), changed);
+	}
+
+	@Test
+	public void testCapabilities() {
+		// Written as in sysfs, most significant word first
+		String key = "7fff000000000000 0 0 0 0";
+		assertTrue(EvdevControllerEnvironment.hasBit(key, 0x130));
+		assertFalse(EvdevControllerEnvironment.hasBit(key, 0x100));
+		assertFalse(EvdevControllerEnvironment.hasAnyBit(key, 0x100, 0x110));
+		assertTrue(EvdevControllerEnvironment.hasAnyBit("3 0 0 0 0", 0x100, 0x110));
+		assertTrue(EvdevControllerEnvironment.hasBit("40", 0x06));
+		assertFalse(EvdevControllerEnvironment.hasBit("", 0x06));
+	}
+
+	@Test
+	public void testDeviceTypes() {
+		// Capability bitmaps as written in sysfs for a 64-bit kernel
+		String noKeys = "0";
+		String buttons01 = "3 0 0 0 0";
+		String gamepadKeys = "7fff000000000000 0 0 0 0";
+		String sixAxes = "3f";
+		String none = "0";
+		String accelerometer = "40";
+
+		// 3D mouse with relative axes, and the axis-less button node of the same receiver
+		assertEquals(Controller.Type.STICK, EvdevControllerEnvironment.getType("3Dconnexion SpaceMouse", "256f", buttons01, none, sixAxes, none));
+		assertNull(EvdevControllerEnvironment.getType("3Dconnexion SpaceMouse", "256f", buttons01, none, none, none));
+		// Unknown device with rotation axes: only a 3D mouse if it has buttons too
+		assertEquals(Controller.Type.STICK, EvdevControllerEnvironment.getType("Other", "1234", buttons01, sixAxes, none, none));
+		assertNull(EvdevControllerEnvironment.getType("Other", "1234", noKeys, sixAxes, none, none));
+		// Gamepad, and its motion sensor node
+		assertEquals(Controller.Type.GAMEPAD, EvdevControllerEnvironment.getType("Gamepad", "045e", gamepadKeys, sixAxes, none, none));
+		assertNull(EvdevControllerEnvironment.getType("Gamepad Motion Sensors", "045e", noKeys, sixAxes, none, accelerometer));
+	}
+
+	/**
+	 * Writes {@code struct input_event} bytes in the layout read by {@link EvdevController}.
+	 */
+	private static class EventWriter {
+
+		private final ByteBuffer buffer = ByteBuffer.allocate(EvdevController.EVENT_SIZE * 64).order(ByteOrder.nativeOrder());
+
+		/**
+		 * Write an event, with a timestamp of {@code second} seconds and {@code second} microseconds.
+		 */
+		EventWriter write(int second, int type, int code, int value) {
+			if (EvdevController.EVENT_SIZE == 24) {
+				buffer.putLong(second);
+				buffer.putLong(second);
+			} else {
+				buffer.putInt(second);
+				buffer.putInt(second);
+			}
+			buffer.putShort((short)type);
+			buffer.putShort((short)code);
+			buffer.putInt(value);
+			return this;
+		}
+
+		ByteBuffer toBuffer() {
+			return buffer.duplicate().flip().order(ByteOrder.nativeOrder());
+		}
+
+		byte[] toByteArray() {
+			var bytes = new byte[buffer.position()];
+			toBuffer().get(bytes);
+			return bytes;
+		}
+
+	}
+
+}
@@ -0,0 +1,198 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import net.java.games.input.AbstractComponent;
+import net.java.games.input.AbstractController;
+import net.java.games.input.Component.Identifier;
+import net.java.games.input.Controller;
+import net.java.games.input.Event;
+import net.java.games.input.Rumbler;
+
+public class TestInputEventBus {
+
+	@Test
+	public void testCapacity() {
+		assertEquals(2, new InputEventBus(1).getCapacity());
+		assertEquals(8, new InputEventBus(8).getCapacity());
+		assertEquals(16, new InputEventBus(9).getCapacity());
+	}
+
+	@Test
+	public void testSubscriptionInOrder() {
+		var bus = new InputEventBus(8);
+		var controller = new CounterController(4);
+		var subscription = bus.subscribe();
+		for (int i = 0; i < 5; i++) {
+			controller.poll();
+			bus.publish(controller);
+		}
+		List<Float> values = new ArrayList<>();
+		assertEquals(5, subscription.poll(e -> values.add(e.getValue(0))));
+		assertEquals(List.of(1f, 2f, 3f, 4f, 5f), values);
+		assertEquals(0, subscription.poll(e -> values.add(e.getValue(0))));
+		assertEquals(4L, bus.getPublishedSequence());
+	}
+
+	@Test
+	public void testSlowSubscriptionSkips() {
+		var bus = new InputEventBus(4);
+		var controller = new CounterController(4);
+		var subscription = bus.subscribe();
+		for (int i = 0; i < 10; i++) {
+			controller.poll();
+			bus.publish(controller);
+		}
+		List<Float> values = new ArrayList<>();
+		assertEquals(4, subscription.poll(e -> values.add(e.getValue(0))));
+		// Only the most recent events are still available
+		assertEquals(List.of(7f, 8f, 9f, 10f), values);
+		assertEquals(6L, subscription.getMissedCount());
+	}
+
+	@Test
+	public void testListenerSeesEveryEvent() {
+		var bus = new InputEventBus(2);
+		var controller = new CounterController(4);
+		var count = new AtomicLong();
+		InputEventListener listener = e -> count.incrementAndGet();
+		bus.addListener(listener);
+		for (int i = 0; i < 10; i++) {
+			controller.poll();
+			bus.publish(controller);
+		}
+		bus.removeListener(listener);
+		controller.poll();
+		bus.publish(controller);
+		assertEquals(10L, count.get());
+	}
+
+	/**
+	 * Drain a small bus from another thread while it is being lapped, and check that no event is ever a mix of
+	 * two polls.
+	 */
+	@Test
+	public void testNoTornEvents() throws Exception {
+		var bus = new InputEventBus(4);
+		var controller = new CounterController(InputEvent.MAX_COMPONENTS);
+		int n = 200_000;
+		var subscription = bus.subscribe();
+
+		var torn = new AtomicLong();
+		var handled = new AtomicLong();
+		var done = new AtomicLong();
+		var consumer = new Thread(() -> {
+			InputEventListener handler = e -> {
+				float first = e.getValue(0);
+				if (e.getComponentCount() != InputEvent.MAX_COMPONENTS || e.getController() != controller)
+					torn.incrementAndGet();
+				for (int i = 1; i < e.getComponentCount(); i++) {
+					if (e.getValue(i) != first) {
+						torn.incrementAndGet();
+						break;
+					}
+				}
+			};
+			while (done.get() == 0)
+				handled.addAndGet(subscription.poll(handler));
+			handled.addAndGet(subscription.poll(handler));
+		});
+		consumer.start();
+		for (int i = 0; i < n; i++) {
+			controller.poll();
+			bus.publish(controller);
+		}
+		done.set(1);
+		consumer.join(10_000);
+
+		assertEquals(0L, torn.get(), "Torn events");
+		assertEquals(n, handled.get() + subscription.getMissedCount());
+		assertTrue(handled.get() > 0);
+	}
+
+
+	/**
+	 * Controller whose components all report the number of times it has been polled.
+	 */
+	static class CounterController extends AbstractController {
+
+		private final CounterComponent[] counters;
+
+		CounterController(int nComponents) {
+			this(createComponents(nComponents));
+		}
+
+		private CounterController(CounterComponent[] counters) {
+			super("Counter", counters, new Controller[0], new Rumbler[0]);
+			this.counters = counters;
+		}
+
+		private static CounterComponent[] createComponents(int n) {
+			var components = new CounterComponent[n];
+			for (int i = 0; i < n; i++)
+				components[i] = new CounterComponent(Identifier.Axis.X);
+			return components;
+		}
+
+		@Override
+		protected void pollDevice() {
+			for (var counter : counters)
+				counter.count++;
+		}
+
+		@Override
+		protected boolean getNextDeviceEvent(Event event) {
+			return false;
+		}
+
+	}
+
+	private static class CounterComponent extends AbstractComponent {
+
+		private float count = 0f;
+
+		private CounterComponent(Identifier id) {
+			super(id.getName(), id);
+		}
+
+		@Override
+		protected float poll() {
+			return count;
+		}
+
+		@Override
+		public boolean isRelative() {
+			return false;
+		}
+
+	}
+
+}
@@ -0,0 +1,96 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class TestLatencyHistogram {
+
+	@Test
+	public void testEmpty() {
+		var histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getCount());
+		assertTrue(Double.isNaN(histogram.getMeanMillis()));
+		assertTrue(Double.isNaN(histogram.getPercentileMillis(50)));
+	}
+
+	@Test
+	public void testPercentiles() {
+		var histogram = new LatencyHistogram();
+		// 1 to 100 ms
+		for (int i = 1; i <= 100; i++)
+			histogram.record(i * 1_000_000L);
+		assertEquals(100, histogram.getCount());
+		assertEquals(50.5, histogram.getMeanMillis(), 1e-9);
+		assertEquals(100.0, histogram.getMaxMillis(), 1e-9);
+		// Percentiles are reported as the upper bound of a bucket, which is at most 1/16 wider than its value
+		assertWithinBucket(50.0, histogram.getPercentileMillis(50));
+		assertWithinBucket(99.0, histogram.getPercentileMillis(99));
+		assertEquals(100.0, histogram.getPercentileMillis(100), 1e-9);
+	}
+
+	@Test
+	public void testMicroseconds() {
+		var histogram = new LatencyHistogram();
+		// Short polls shouldn't all be reported as the same value
+		for (int i = 0; i < 50; i++)
+			histogram.record(2_000L);
+		for (int i = 0; i < 50; i++)
+			histogram.record(8_000L);
+		assertWithinBucket(0.002, histogram.getPercentileMillis(50));
+		assertWithinBucket(0.008, histogram.getPercentileMillis(90));
+		assertEquals("2.05 \u00B5s", LatencyHistogram.format(histogram.getPercentileMillis(50)));
+	}
+
+	@Test
+	public void testBuckets() {
+		long previous = -1;
+		for (long nanos = 0; nanos < 10_000_000L; nanos += 997) {
+			int bucket = LatencyHistogram.getBucket(nanos);
+			long upper = LatencyHistogram.getBucketUpperNanos(bucket);
+			assertTrue(upper > nanos);
+			assertTrue(upper <= nanos + Math.max(1, nanos / LatencyHistogram.SUB_BUCKETS));
+			assertTrue(bucket >= previous);
+			previous = bucket;
+		}
+	}
+
+	private static void assertWithinBucket(double expected, double actual) {
+		assertTrue(actual >= expected && actual <= expected * (1.0 + 1.0 / LatencyHistogram.SUB_BUCKETS),
+				"Expected " + expected + " to be in bucket ending " + actual);
+	}
+
+	@Test
+	public void testOverflow() {
+		var histogram = new LatencyHistogram();
+		histogram.record(5_000_000_000L);
+		// Anything beyond the last bucket is reported as the maximum
+		assertEquals(5000.0, histogram.getPercentileMillis(50), 1e-9);
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0.0, histogram.getMaxMillis(), 1e-9);
+	}
+
+}
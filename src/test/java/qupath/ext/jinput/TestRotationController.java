@@ -0,0 +1,124 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2018 - 2023 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.ext.jinput;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class TestRotationController {
+
+	@Test
+	public void testDeadBand() {
+		var rotation = new RotationController();
+		rotation.sync(0);
+		for (int i = 0; i < 100; i++)
+			assertTrue(Double.isNaN(rotation.step(RotationController.DEAD_BAND * 0.99, 0)));
+	}
+
+	@Test
+	public void testFullDeflection() {
+		var rotation = new RotationController();
+		rotation.sync(0);
+		double angle = rotation.step(1.0, 0);
+		assertEquals(RotationController.MAX_RADIANS_PER_TICK, angle, 1e-12);
+		rotation.applied(angle, angle);
+		assertEquals(Math.sin(-angle), rotation.getSin(), 1e-12);
+		assertEquals(Math.cos(-angle), rotation.getCos(), 1e-12);
+		// Twisting back returns to where we started
+		assertEquals(0.0, rotation.step(-1.0, 0), 1e-12);
+	}
+
+	@Test
+	public void testSmallChangesAccumulate() {
+		var rotation = new RotationController();
+		rotation.sync(0);
+		// Just outside the dead band, each tick is well below the minimum change
+		double dr = RotationController.DEAD_BAND + 0.01;
+		int ticks = 0;
+		double angle = Double.NaN;
+		while (Double.isNaN(angle) && ticks < 1000) {
+			angle = rotation.step(dr, 0);
+			ticks++;
+		}
+		assertTrue(ticks > 1);
+		assertTrue(angle >= RotationController.MIN_CHANGE);
+	}
+
+	@Test
+	public void testSnap() {
+		var rotation = new RotationController();
+		rotation.sync(0);
+		double snap = Math.toRadians(90);
+		// At full deflection, it takes about 15 ticks to reach 45 degrees, when the angle rounds up to 90
+		int ticks = 0;
+		double angle = Double.NaN;
+		while (Double.isNaN(angle) && ticks < 100) {
+			angle = rotation.step(1.0, 90);
+			ticks++;
+		}
+		assertTrue(ticks >= 15 && ticks <= 16, "Snapped after " + ticks + " ticks");
+		assertEquals(snap, angle, 1e-9);
+		rotation.applied(angle, angle);
+		// Continuing to twist doesn't reapply the same angle
+		assertTrue(Double.isNaN(rotation.step(1.0, 90)));
+	}
+
+	@Test
+	public void testSnapInTwistDirection() {
+		double snap = Math.toRadians(15);
+		for (double dr : new double[] {1.0, -1.0}) {
+			var rotation = new RotationController();
+			// Closer to 0 than 15 degrees, but twisting must never rotate against the twist
+			rotation.sync(Math.toRadians(10));
+			double angle = Double.NaN;
+			for (int ticks = 0; Double.isNaN(angle) && ticks < 100; ticks++)
+				angle = rotation.step(dr, 15);
+			assertEquals(dr > 0 ? snap : 0.0, angle, 1e-9);
+			rotation.applied(angle, angle);
+
+			// The next snap is a whole step further on, after half a step of twist
+			int ticks = 0;
+			angle = Double.NaN;
+			while (Double.isNaN(angle) && ticks < 100) {
+				angle = rotation.step(dr, 15);
+				ticks++;
+			}
+			assertEquals((dr > 0 ? 2 : -1) * snap, angle, 1e-9);
+			assertTrue(ticks >= 2 && ticks <= 3, "Snapped after " + ticks + " ticks");
+		}
+	}
+
+	@Test
+	public void testNormalisedRotation() {
+		var rotation = new RotationController();
+		rotation.sync(Math.PI - 0.01);
+		double angle = rotation.step(1.0, 0);
+		// The viewer reports the equivalent angle in the range -pi to pi
+		double reported = angle - 2 * Math.PI;
+		rotation.applied(angle, reported);
+		rotation.sync(reported);
+		assertEquals(reported + RotationController.MAX_RADIANS_PER_TICK, rotation.step(1.0, 0), 1e-9);
+	}
+
+}